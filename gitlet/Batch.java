@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Runs a script of gitlet commands in one JVM.
+ * Each line of the script is one command, split into arguments at
+ * white space as a shell would, with single or double quotes grouping
+ * words, as in: commit "Add f1 and f2". Blank lines and lines starting
+ * with # are skipped, and a line holding just "checkpoint" writes out
+ * all state held in memory so far.
+ * When run on a Repo, state files are written once at each checkpoint
+ * and at the end rather than by every command. When a Daemon is
+ * running, each command is sent to it instead.
+ * After each command a line on the report stream gives its number, its
+ * exit status (0, or 1 if it failed with an exception) and the time it
+ * took, followed by a summary at the end. A command that fails leaves
+ * the state as it was before it ran.
+ * @author Eesha Thaker
+ */
+class Batch {
+
+    /** Line that flushes the state held in memory. */
+    static final String CHECKPOINT = "checkpoint";
+
+    /** A way of running commands. */
+    interface Session {
+        /** Runs the command given by ARGS. */
+        void run(String[] args) throws IOException, ParseException;
+
+        /** Writes out state held in memory. */
+        void checkpoint();
+
+        /** Undoes the changes to state made by the last command run,
+         * which failed. */
+        void rollback();
+    }
+
+    /** Where commands are run. */
+    private final Session session;
+
+    /** Where the status and timing of each command is reported. */
+    private final PrintStream report;
+
+    /** A batch running commands in SESSION and reporting them to
+     * REPORT. */
+    Batch(Session session, PrintStream report) {
+        this.session = session;
+        this.report = report;
+    }
+
+    /** Returns a session running commands on REPO, deferring writes of
+     * its state files to checkpoints. */
+    static Session local(Repo repo) {
+        return new Session() {
+            /** Changes to state pending before the last command. */
+            private Map<File, byte[]> mark = repo.mark();
+
+            @Override
+            public void run(String[] args) throws IOException, ParseException {
+                mark = repo.mark();
+                Main.run(repo, args);
+            }
+
+            @Override
+            public void checkpoint() {
+                mark = repo.mark();
+                repo.flush();
+            }
+
+            @Override
+            public void rollback() {
+                repo.rollback(mark);
+            }
+        };
+    }
+
+    /** Returns a session sending commands to the daemon serving the
+     * repository whose gitlet directory is GITLETDIR. */
+    static Session remote(File gitletDir) {
+        return new Session() {
+            @Override
+            public void run(String[] args) throws IOException {
+                if (!Daemon.forward(args, gitletDir, System.out)) {
+                    throw new IOException("Gitlet daemon stopped.");
+                }
+            }
+
+            @Override
+            public void checkpoint() {
+            }
+
+            @Override
+            public void rollback() {
+            }
+        };
+    }
+
+    /** Runs each command in SCRIPT, then checkpoints. Returns the number
+     * of commands that failed. */
+    int run(BufferedReader script) throws IOException {
+        int commands = 0, failed = 0;
+        long start = System.nanoTime();
+        for (String line = script.readLine(); line != null;
+             line = script.readLine()) {
+            String[] args = split(line);
+            if (args.length == 0 || args[0].startsWith("#")) {
+                continue;
+            }
+            commands += 1;
+            long commandStart = System.nanoTime();
+            int status = 0;
+            try {
+                if (args.length == 1 && args[0].equals(CHECKPOINT)) {
+                    session.checkpoint();
+                } else {
+                    session.run(args);
+                }
+            } catch (RuntimeException | IOException | ParseException excp) {
+                session.rollback();
+                status = 1;
+                report.println(excp);
+            }
+            System.out.flush();
+            failed += status;
+            report.printf("[%d] exit %d %.3f ms: %s%n", commands, status,
+                    (System.nanoTime() - commandStart) / 1e6, line.trim());
+        }
+        session.checkpoint();
+        report.printf("%d commands, %d failed, %.3f ms%n", commands, failed,
+                (System.nanoTime() - start) / 1e6);
+        return failed;
+    }
+
+    /** Returns the arguments on LINE, separated by white space outside
+     * quotes. A backslash inside double quotes escapes the next
+     * character. */
+    static String[] split(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder arg = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"' && i + 1 < line.length()) {
+                    i += 1;
+                    arg.append(line.charAt(i));
+                } else {
+                    arg.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (arg != null) {
+                    result.add(arg.toString());
+                    arg = null;
+                }
+            } else {
+                if (arg == null) {
+                    arg = new StringBuilder();
+                }
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                } else {
+                    arg.append(c);
+                }
+            }
+        }
+        if (arg != null) {
+            result.add(arg.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+}
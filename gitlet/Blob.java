@@ -1,7 +1,14 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /** Class representing the blob of a given file.
  * The blob of a file refers to the contents of that file.
@@ -26,10 +33,32 @@ public class Blob implements Serializable {
 
     public Blob(File file) {
         this.file = file;
-        this.blobHash = Utils.sha1(Utils.readContentsAsString(file) + file.getName());
+        this.blobHash = hash(file);
         this.blobPath = file.getPath();
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE followed by its name.
+     * The contents are streamed through a FileChannel in chunks of
+     * Utils.CHUNK_SIZE bytes, so files of any size (and any encoding)
+     * can be hashed in constant memory. */
+    static String hash(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Utils.CHUNK_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+            md.update(file.getName().getBytes(StandardCharsets.UTF_8));
+            return Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
     /** Returns hash of given blob. */
     public String getHash() {
         return blobHash;
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/** On-disk set of the hashes of every blob referenced by a commit.
+ * The set is a MappedTable of raw 20-byte hashes, an open-addressing
+ * hash table memory-mapped and updated in place, so a membership test
+ * reads a slot or two and never touches the commits themselves. Its
+ * header records how many commits of the CommitStore it covers;
+ * commits added since are folded in by update(), so the set is kept
+ * current one commit at a time and is rebuilt from scratch only when
+ * it is missing.
+ * @author Eesha Thaker
+ */
+class BlobSet {
+
+    /** Magic number at the start of the file. */
+    private static final byte[] MAGIC = {'G', 'B', 'L', 'S'};
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Field of the header holding the number of commits covered. */
+    private static final int COMMITS = 0;
+
+    /** Number of slots in a new table; always a power of two. */
+    static final int INITIAL_CAPACITY = 1 << 10;
+
+    /** The table of hashes. */
+    private final MappedTable table;
+
+    /** A blob set kept in the gitlet directory GITLETDIR. */
+    BlobSet(File gitletDir) {
+        this.table = new MappedTable(Utils.join(gitletDir, "blobSet"),
+                MAGIC, VERSION, 4, 0);
+    }
+
+    /** Returns true iff some commit covered by this set references the
+     * blob with HASH. */
+    boolean contains(String hash) {
+        open();
+        return table.find(Utils.fromHex(hash)) >= 0;
+    }
+
+    /** Adds the blobs of every commit in STORE that this set does not
+     * cover yet. Only files that differ from the commit before it are
+     * visited, and for commits with trees the subtrees the two share are
+     * skipped without being read. */
+    void update(CommitStore store) {
+        open();
+        int covered = table.getInt(COMMITS);
+        if (covered >= store.size()) {
+            return;
+        }
+        Iterator<String> ids = store.ids().iterator();
+        for (int i = 0; i < covered; i += 1) {
+            ids.next();
+        }
+        TreeStore trees = store.trees();
+        Commit previous = null;
+        while (ids.hasNext()) {
+            Commit commit = store.get(ids.next());
+            String before = previous == null ? null : previous.getTree();
+            if (commit.getTree() != null) {
+                trees.diff(before, commit.getTree(), (name, hash) -> {
+                    if (hash != null) {
+                        add(hash);
+                    }
+                }, (dir, hash) -> { });
+            } else {
+                Map<String, String> old = previous == null || before != null
+                        ? Map.of() : previous.getBlobReferences();
+                for (Map.Entry<String, String> file
+                        : commit.getBlobReferences().entrySet()) {
+                    if (!file.getValue().equals(old.get(file.getKey()))) {
+                        add(file.getValue());
+                    }
+                }
+            }
+            previous = commit;
+            covered += 1;
+        }
+        table.putInt(COMMITS, covered);
+    }
+
+    /** Adds HASHES to this set and marks every commit in STORE as
+     * covered, without reading the commits. The commits not covered yet
+     * must reference no blobs but HASHES and those of the commits
+     * covered, as when they were read by a FastImport that wrote HASHES
+     * and the set was up to date before they were stored. */
+    void cover(CommitStore store, Collection<String> hashes) {
+        open();
+        for (String hash : hashes) {
+            add(hash);
+        }
+        table.putInt(COMMITS, store.size());
+    }
+
+    /** Adds HASH to this set, growing the table if it is half full. */
+    private void add(String hash) {
+        table.add(Utils.fromHex(hash));
+    }
+
+    /** Maps the table, creating an empty one that covers no commits if
+     * the file is missing or unreadable. */
+    private void open() {
+        if (!table.open()) {
+            table.create(INITIAL_CAPACITY);
+        }
+    }
+}
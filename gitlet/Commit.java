@@ -14,6 +14,10 @@ import java.util.TreeMap;
  */
 public class Commit implements java.io.Serializable {
 
+    /** Version of serialized commits, fixed at that of commits written
+     * before trees so that they can still be read. */
+    private static final long serialVersionUID = 4325069698359076990L;
+
     /** Metadata containing commit message **/
     private String commitMessage;
 
@@ -29,8 +33,17 @@ public class Commit implements java.io.Serializable {
     private String parentHash2;
 
     /** A treemap mapping the name of blob files to
-     * their "references", or hash values. */
-    public TreeMap<String, String> blobReferences;
+     * their "references", or hash values. Null until read
+     * from the tree when the commit was read without its files. */
+    private TreeMap<String, String> blobReferences;
+
+    /** Hash of the tree holding this commit's files (see TreeStore),
+     * or null for commits made before trees, which carry only
+     * blobReferences. */
+    private String tree;
+
+    /** Where the tree is read from when blobReferences is null. */
+    private transient TreeStore trees;
 
     /** Represents hash value of this commit.
      * Generated using all metadata: message, timestamp,
@@ -118,10 +131,61 @@ public class Commit implements java.io.Serializable {
         return name;
     }
 
+    /** Returns the map of file names to blob hashes of this commit,
+     * reading it from the commit's tree the first time if needed. */
+    public TreeMap<String, String> getBlobReferences() {
+        if (blobReferences == null) {
+            blobReferences = trees.files(tree);
+        }
+        return blobReferences;
+    }
+
+    /** Sets the map of file names to blob hashes to given argument. */
+    public void setBlobReferences(TreeMap<String, String> blobReferences) {
+        this.blobReferences = blobReferences;
+    }
+
+    /** Returns the hash of this commit's tree, or null if it has none. */
+    public String getTree() {
+        return tree;
+    }
+
+    /** Sets the hash of this commit's tree to given argument. */
+    public void setTree(String tree) {
+        this.tree = tree;
+    }
+
+    /** Drops the files held by this commit, which are read from its
+     * tree in TREES when next needed. */
+    void readFilesFrom(TreeStore trees) {
+        this.trees = trees;
+        this.blobReferences = null;
+    }
+
+    /** Returns a commit equal to this one, with the same metadata, hash,
+     * name and tree, that shares none of its changeable state with it.
+     * If this commit's files have not been read from its tree, neither
+     * are those of the duplicate. */
+    Commit duplicate() {
+        Commit result = new Commit(commitMessage,
+                timeStamp == null ? null : new Date(timeStamp.getTime()),
+                parentHash1, parentHash2);
+        result.currID = currID;
+        result.name = name;
+        result.tree = tree;
+        result.trees = trees;
+        result.blobReferences =
+                blobReferences == null ? null : new TreeMap<>(blobReferences);
+        return result;
+    }
+
+    /** Returns a commit with the metadata, tree and files of copyFrom,
+     * whose map of files is its own. */
     public static Commit copy(Commit copyFrom) {
         Commit newCommit = new Commit(copyFrom.commitMessage, copyFrom.timeStamp,
                 copyFrom.parentHash1, copyFrom.parentHash2);
-        newCommit.blobReferences = copyFrom.blobReferences;
+        newCommit.blobReferences = new TreeMap<>(copyFrom.getBlobReferences());
+        newCommit.tree = copyFrom.tree;
         return newCommit;
     }
 }
@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A bounded cache of decoded commits, by hash.
+ * At most capacity commits are kept; adding one more evicts the least
+ * recently used. Commits with trees are kept without their files, so
+ * each entry is small and the heap used by the cache stays flat however
+ * long the history grows. Hits, misses and evictions are counted so
+ * the capacity can be tuned (see Config.COMMIT_CACHE).
+ * @author Eesha Thaker
+ */
+class CommitCache {
+
+    /** Number of commits kept unless configured otherwise. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** Cached commits, by hash, least recently used first. */
+    private final LinkedHashMap<String, Commit> commits =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Largest number of commits kept. */
+    private int capacity;
+
+    /** Number of lookups that found their commit. */
+    private long hits;
+
+    /** Number of lookups that did not. */
+    private long misses;
+
+    /** Number of commits evicted to make room. */
+    private long evictions;
+
+    /** A cache holding at most CAPACITY commits. */
+    CommitCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /** Sets the largest number of commits kept to CAPACITY, evicting
+     * commits if there are more. A capacity of 0 disables the cache. */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        evict();
+    }
+
+    /** Returns the cached commit with hash ID, or null if it is not
+     * cached. The commit returned is shared and must not be changed. */
+    synchronized Commit get(String id) {
+        Commit result = commits.get(id);
+        if (result == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return result;
+    }
+
+    /** Caches COMMIT, which will not be changed, under hash ID. */
+    synchronized void put(String id, Commit commit) {
+        if (capacity > 0) {
+            commits.put(id, commit);
+            evict();
+        }
+    }
+
+    /** Evicts the least recently used commits until at most capacity
+     * remain. */
+    private void evict() {
+        Iterator<String> eldest = commits.keySet().iterator();
+        while (commits.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Returns the number of commits cached. */
+    synchronized int size() {
+        return commits.size();
+    }
+
+    /** Returns the number of lookups that found their commit. */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns the number of commits evicted to make room. */
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Commit cache: %d of %d commits, %d hits, "
+                + "%d misses, %d evictions.", commits.size(), capacity,
+                hits, misses, evictions);
+    }
+}
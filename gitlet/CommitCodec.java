@@ -0,0 +1,356 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Compact binary encoding of commits and of the maps kept in the
+ * gitlet directory, in place of Java serialization.
+ * Every encoding starts with a byte giving the VERSION of the format,
+ * which can never be the first byte of Java serialization's output, so
+ * files written by older versions of gitlet are still recognized and
+ * read (see decodeState) and are rewritten in this format the next time
+ * they are written. A commit is encoded as:
+ * <pre>
+ * byte      flags: which of the fields below are present
+ * 20 bytes  hash of the commit
+ * 20 bytes  hash of the first parent
+ * 20 bytes  hash of the second parent
+ * long      timestamp, in milliseconds since the epoch
+ * string    message
+ * string    name (of the branch, for branch heads)
+ * 20 bytes  hash of the tree of the commit's files
+ * varint    number of files, then for each in name order
+ *           a file entry
+ * </pre>
+ * The files are left out of a commit that has a tree when it is
+ * encoded for the commit log, since its tree holds them; they are read
+ * from the tree when needed. They are kept in state files, where the
+ * head commit may track fewer files than its tree after an rm.
+ * A string is a varint byte count followed by UTF-8 bytes. A file
+ * entry is a varint holding twice the byte count of the file name, plus
+ * one if the blob hash follows as 20 raw bytes, then the name, then the
+ * hash: raw if it is a SHA-1 hash in hex, as it always is in practice,
+ * or else as a string. A map of branches is a varint count followed by
+ * each branch name and its encoded commit; a map of file names to
+ * hashes, as in the staging area, is a varint count followed by file
+ * entries. Both are preceded by a byte telling which they are.
+ * Decoding reads straight from a ByteBuffer, allocating little beyond
+ * the decoded strings.
+ * @author Eesha Thaker
+ */
+class CommitCodec {
+
+    /** Version of the format. */
+    static final byte VERSION = 1;
+
+    /** First byte of the output of Java serialization. */
+    private static final byte JAVA_SERIALIZED = (byte) 0xac;
+
+    /** Length of a hash in bytes. */
+    private static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+
+    /** Flag marking a commit that has a hash. */
+    private static final int HAS_ID = 1;
+
+    /** Flag marking a commit that has a first parent. */
+    private static final int HAS_PARENT1 = 2;
+
+    /** Flag marking a commit that has a second parent. */
+    private static final int HAS_PARENT2 = 4;
+
+    /** Flag marking a commit that has a timestamp. */
+    private static final int HAS_TIME = 8;
+
+    /** Flag marking a commit that has a message. */
+    private static final int HAS_MESSAGE = 16;
+
+    /** Flag marking a commit that has a name. */
+    private static final int HAS_NAME = 32;
+
+    /** Flag marking a commit that has a tree. */
+    private static final int HAS_TREE = 64;
+
+    /** Flag marking a commit encoded without its files. */
+    private static final int NO_FILES = 128;
+
+    /** Digits of hexadecimal numerals. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns the encoding of COMMIT, without its files if it has a
+     * tree. */
+    static byte[] encode(Commit commit) {
+        Output out = new Output();
+        out.write(VERSION);
+        write(out, commit, commit.getTree() == null);
+        return out.toByteArray();
+    }
+
+    /** Returns the commit encoded by BYTES. */
+    static Commit decode(byte[] bytes) {
+        return decode(bytes, null);
+    }
+
+    /** Returns the commit encoded by BYTES, which reads its files from
+     * TREES if they were left out. */
+    static Commit decode(byte[] bytes, TreeStore trees) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        checkVersion(in);
+        return readCommit(in, trees);
+    }
+
+    /** Returns true iff BYTES were written by Java serialization rather
+     * than by this codec. */
+    static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == JAVA_SERIALIZED;
+    }
+
+    /** Returns the encoding of OBJ, which is a Commit, a map of branch
+     * names to commits, or a map of file names to blob hashes. */
+    @SuppressWarnings("unchecked")
+    static byte[] encodeState(Serializable obj) {
+        Output out = new Output();
+        out.write(VERSION);
+        if (obj instanceof Commit) {
+            out.write('C');
+            write(out, (Commit) obj, true);
+        } else {
+            Map<String, ?> map = (Map<String, ?>) obj;
+            boolean branches = !map.isEmpty()
+                    && map.values().iterator().next() instanceof Commit;
+            out.write(branches ? 'B' : 'F');
+            out.writeVarint(map.size());
+            for (Map.Entry<String, ?> e : map.entrySet()) {
+                if (branches) {
+                    out.writeString(e.getKey());
+                    write(out, (Commit) e.getValue(), true);
+                } else {
+                    writeEntry(out, e.getKey(), (String) e.getValue());
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the object encoded by encodeState in BYTES, which may
+     * also hold the Java serialization of such an object. */
+    static Serializable decodeState(byte[] bytes) {
+        if (isJavaSerialized(bytes)) {
+            return Utils.deserialize(bytes, Serializable.class);
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        checkVersion(in);
+        byte kind = in.get();
+        if (kind == 'C') {
+            return readCommit(in, null);
+        }
+        int size = readVarint(in);
+        if (kind == 'B') {
+            TreeMap<String, Commit> result = new TreeMap<>();
+            for (int i = 0; i < size; i += 1) {
+                String name = readString(in);
+                result.put(name, readCommit(in, null));
+            }
+            return result;
+        }
+        TreeMap<String, String> result = new TreeMap<>();
+        readEntries(in, size, result);
+        return result;
+    }
+
+    /** Writes the encoding of COMMIT, without a version, to OUT,
+     * leaving out its files unless WITHFILES. */
+    private static void write(Output out, Commit commit, boolean withFiles) {
+        int flags = (commit.getCurrID() != null ? HAS_ID : 0)
+                | (commit.getParentHash1() != null ? HAS_PARENT1 : 0)
+                | (commit.getParentHash2() != null ? HAS_PARENT2 : 0)
+                | (commit.getTimeStamp() != null ? HAS_TIME : 0)
+                | (commit.getCommitMessage() != null ? HAS_MESSAGE : 0)
+                | (commit.getName() != null ? HAS_NAME : 0)
+                | (commit.getTree() != null ? HAS_TREE : 0)
+                | (withFiles ? 0 : NO_FILES);
+        out.write(flags);
+        if ((flags & HAS_ID) != 0) {
+            out.writeHash(commit.getCurrID());
+        }
+        if ((flags & HAS_PARENT1) != 0) {
+            out.writeHash(commit.getParentHash1());
+        }
+        if ((flags & HAS_PARENT2) != 0) {
+            out.writeHash(commit.getParentHash2());
+        }
+        if ((flags & HAS_TIME) != 0) {
+            out.writeLong(commit.getTimeStamp().getTime());
+        }
+        if ((flags & HAS_MESSAGE) != 0) {
+            out.writeString(commit.getCommitMessage());
+        }
+        if ((flags & HAS_NAME) != 0) {
+            out.writeString(commit.getName());
+        }
+        if ((flags & HAS_TREE) != 0) {
+            out.writeHash(commit.getTree());
+        }
+        if (withFiles) {
+            Map<String, String> files = commit.getBlobReferences();
+            out.writeVarint(files.size());
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                writeEntry(out, e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Writes the file entry for NAME and HASH to OUT. */
+    private static void writeEntry(Output out, String name, String hash) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean raw = isHash(hash);
+        out.writeVarint(nameBytes.length * 2 + (raw ? 1 : 0));
+        out.write(nameBytes, 0, nameBytes.length);
+        if (raw) {
+            out.writeHash(hash);
+        } else {
+            out.writeString(hash);
+        }
+    }
+
+    /** Returns the commit encoded, without a version, at the position
+     * of IN, advancing past it. Its files are read from TREES if they
+     * were left out. */
+    private static Commit readCommit(ByteBuffer in, TreeStore trees) {
+        int flags = in.get() & 0xff;
+        String id = (flags & HAS_ID) != 0 ? readHash(in) : null;
+        String parent1 = (flags & HAS_PARENT1) != 0 ? readHash(in) : null;
+        String parent2 = (flags & HAS_PARENT2) != 0 ? readHash(in) : null;
+        Date time = (flags & HAS_TIME) != 0 ? new Date(in.getLong()) : null;
+        String message = (flags & HAS_MESSAGE) != 0 ? readString(in) : null;
+        String name = (flags & HAS_NAME) != 0 ? readString(in) : null;
+        Commit result = new Commit(message, time, parent1, parent2);
+        result.currID = id;
+        result.setName(name);
+        if ((flags & HAS_TREE) != 0) {
+            result.setTree(readHash(in));
+        }
+        if ((flags & NO_FILES) != 0) {
+            result.readFilesFrom(trees);
+        } else {
+            readEntries(in, readVarint(in), result.getBlobReferences());
+        }
+        return result;
+    }
+
+    /** Reads SIZE file entries from IN into RESULT. */
+    private static void readEntries(ByteBuffer in, int size,
+                                    Map<String, String> result) {
+        for (int i = 0; i < size; i += 1) {
+            int header = readVarint(in);
+            String name = readString(in, header >>> 1);
+            result.put(name, (header & 1) != 0 ? readHash(in) : readString(in));
+        }
+    }
+
+    /** Throws IllegalArgumentException unless IN starts with a version
+     * of the format that can be read. */
+    private static void checkVersion(ByteBuffer in) {
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unknown commit format " + version);
+        }
+    }
+
+    /** Returns true iff HASH is a SHA-1 hash as a lower-case hex numeral. */
+    private static boolean isHash(String hash) {
+        if (hash.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i += 1) {
+            char c = hash.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the hash stored as raw bytes at the position of IN. */
+    private static String readHash(ByteBuffer in) {
+        char[] hex = new char[Utils.UID_LENGTH];
+        for (int i = 0; i < HASH_SIZE; i += 1) {
+            int b = in.get();
+            hex[2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /** Returns the string stored with its length at the position of IN. */
+    private static String readString(ByteBuffer in) {
+        return readString(in, readVarint(in));
+    }
+
+    /** Returns the LENGTH bytes at the position of IN as UTF-8. */
+    private static String readString(ByteBuffer in, int length) {
+        String result = new String(in.array(), in.arrayOffset() + in.position(),
+                length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return result;
+    }
+
+    /** Returns the unsigned varint at the position of IN. */
+    private static int readVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    /** A growable buffer with the writes the codec needs. */
+    private static class Output extends ByteArrayOutputStream {
+
+        /** A buffer with room for a typical commit. */
+        Output() {
+            super(256);
+        }
+
+        /** Writes the unsigned VALUE in 7-bit groups, low first. */
+        void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        /** Writes VALUE in 8 bytes, high first. */
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        /** Writes the hex numeral HASH as raw bytes. */
+        void writeHash(String hash) {
+            if (!isHash(hash)) {
+                throw new IllegalArgumentException("not a hash: " + hash);
+            }
+            for (int i = 0; i < hash.length(); i += 2) {
+                write(Character.digit(hash.charAt(i), 16) << 4
+                        | Character.digit(hash.charAt(i + 1), 16));
+            }
+        }
+
+        /** Writes S as a varint byte count followed by UTF-8 bytes. */
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/** Compact file describing the shape of the commit history.
+ * Commits are numbered by their position in the CommitStore, oldest
+ * first. For each position the graph holds the positions of the
+ * commit's two parents (-1 where there is none), its generation
+ * number: 1 for a commit without parents, otherwise one more than the
+ * largest generation of its parents, and its timestamp. Entries are
+ * appended as commits are added, so the file is never rewritten.
+ * Walking the history, and bounding a walk by time, then needs neither
+ * commit objects nor hash lookups. Files of version 1, without
+ * timestamps, are rebuilt.
+ * Since an ancestor always has a smaller generation than its
+ * descendants, a walk that visits commits in decreasing generation
+ * order reaches the latest common ancestor of two commits before any
+ * of that ancestor's own ancestors, and can stop there.
+ * @author Eesha Thaker
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the file. */
+    private static final byte[] MAGIC = {'G', 'G', 'R', 'F'};
+
+    /** Version of the file format. */
+    private static final int VERSION = 2;
+
+    /** Size of the header: magic and version. */
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+
+    /** Size of an entry: two parent positions, a generation and a
+     * timestamp. */
+    private static final int ENTRY_SIZE = 3 * 4 + 8;
+
+    /** Marks a commit reached from the first commit of a merge-base
+     * search. */
+    private static final byte FROM_FIRST = 1;
+
+    /** Marks a commit reached from the second commit of a merge-base
+     * search. */
+    private static final byte FROM_SECOND = 2;
+
+    /** File holding the graph. */
+    private final File graphFile;
+
+    /** The entries of the graph, or null if they have not been read. */
+    private ByteBuffer entries;
+
+    /** The store whose commits the graph describes, as of the last
+     * update(). Positions are converted to and from hashes through it. */
+    private CommitStore store;
+
+    /** The number of commits the graph covers, as of the last update(). */
+    private int count;
+
+    /** A commit graph kept in the gitlet directory GITLETDIR. */
+    CommitGraph(File gitletDir) {
+        this.graphFile = Utils.join(gitletDir, "commitGraph");
+    }
+
+    /** Appends entries for every commit in STORE that the graph does
+     * not cover yet. Commits must have been added to STORE after their
+     * parents. */
+    void update(CommitStore store) {
+        update(store, store::get);
+    }
+
+    /** Appends entries for every commit in STORE that the graph does
+     * not cover yet, as update(STORE) does, getting each commit from its
+     * hash through COMMITS, which may have them in memory already. */
+    void update(CommitStore store, Function<String, Commit> commits) {
+        int covered = size();
+        this.store = store;
+        count = store.size();
+        if (covered > count) {
+            graphFile.delete();
+            covered = 0;
+        } else if (covered == count) {
+            return;
+        }
+        int[] generations = new int[count - covered];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(graphFile, true), Utils.CHUNK_SIZE))) {
+            if (covered == 0) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (int i = covered; i < count; i += 1) {
+                Commit commit = commits.apply(store.id(i));
+                int parent1 = position(commit.getParentHash1(), i);
+                int parent2 = position(commit.getParentHash2(), i);
+                int generation = 1 + Math.max(
+                        generation(parent1, covered, generations),
+                        generation(parent2, covered, generations));
+                generations[i - covered] = generation;
+                out.writeInt(parent1);
+                out.writeInt(parent2);
+                out.writeInt(generation);
+                out.writeLong(commit.getTimeStamp().getTime());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        entries = null;
+    }
+
+    /** Returns the hash of the latest common ancestor of the commits
+     * with hashes FIRST and SECOND, or null if they have none. The graph
+     * must have been brought up to date with update() first. Commits
+     * are visited in decreasing order of generation, latest first, and
+     * the first one found to be reachable from both is the answer. */
+    String mergeBase(String first, String second) {
+        read();
+        int a = position(first, count);
+        int b = position(second, count);
+        if (a < 0 || b < 0) {
+            return null;
+        }
+        byte[] flags = new byte[count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(generation(y), generation(x));
+            return cmp != 0 ? cmp : Integer.compare(y, x);
+        });
+        flags[a] |= FROM_FIRST;
+        flags[b] |= FROM_SECOND;
+        queue.add(a);
+        if (b != a) {
+            queue.add(b);
+        }
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            byte f = flags[c];
+            if (f == (FROM_FIRST | FROM_SECOND)) {
+                return store.id(c);
+            }
+            for (int p : new int[] {parent1(c), parent2(c)}) {
+                if (p >= 0 && (flags[p] & f) != f) {
+                    if (flags[p] == 0) {
+                        queue.add(p);
+                    }
+                    flags[p] |= f;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the position of the first parent of the commit at POS,
+     * or -1 if it has none. */
+    int parent1(int pos) {
+        return entries.getInt(HEADER_SIZE + pos * ENTRY_SIZE);
+    }
+
+    /** Returns the position of the second parent of the commit at POS,
+     * or -1 if it has none. */
+    int parent2(int pos) {
+        return entries.getInt(HEADER_SIZE + pos * ENTRY_SIZE + 4);
+    }
+
+    /** Returns the generation number of the commit at POS. */
+    int generation(int pos) {
+        return entries.getInt(HEADER_SIZE + pos * ENTRY_SIZE + 8);
+    }
+
+    /** Returns the timestamp of the commit at POS, in milliseconds since
+     * the epoch. */
+    long time(int pos) {
+        return entries.getLong(HEADER_SIZE + pos * ENTRY_SIZE + 12);
+    }
+
+    /** Returns the position of the commit with hash ID, or -1 if the
+     * graph does not cover it. The graph must have been brought up to
+     * date with update() first. */
+    int position(String id) {
+        read();
+        return position(id, count);
+    }
+
+    /** Returns the hash of the commit at POS. */
+    String id(int pos) {
+        return store.id(pos);
+    }
+
+    /** Returns the generation of the commit at POS, which is either in
+     * the graph, or among those being added starting at position
+     * COVERED, whose generations are in ADDED. Returns 0 for POS -1. */
+    private int generation(int pos, int covered, int[] added) {
+        if (pos < 0) {
+            return 0;
+        } else if (pos >= covered) {
+            return added[pos - covered];
+        }
+        read();
+        return generation(pos);
+    }
+
+    /** Returns the position of the commit with hash ID, which must come
+     * before position LIMIT, or -1 if ID is null or not found. The
+     * position is looked up in the store's index. */
+    private int position(String id, int limit) {
+        if (id == null) {
+            return -1;
+        }
+        int pos = store.position(id);
+        return pos < limit ? pos : -1;
+    }
+
+    /** Returns the number of commits the graph file covers. A missing or
+     * unreadable file is removed and covers none. */
+    private int size() {
+        if (!graphFile.isFile()) {
+            return 0;
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(graphFile, "rw")) {
+            if (in.length() >= HEADER_SIZE) {
+                in.readFully(header);
+                ByteBuffer buffer = ByteBuffer.wrap(header);
+                byte[] magic = new byte[MAGIC.length];
+                buffer.get(magic);
+                if (Arrays.equals(magic, MAGIC) && buffer.getInt() == VERSION) {
+                    long covered = (in.length() - HEADER_SIZE) / ENTRY_SIZE;
+                    in.getChannel().truncate(HEADER_SIZE + covered * ENTRY_SIZE);
+                    return (int) covered;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        graphFile.delete();
+        return 0;
+    }
+
+    /** Maps the entries of the graph file, if that has not been done
+     * since it last changed. */
+    private void read() {
+        if (entries != null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(graphFile.toPath(),
+                StandardOpenOption.READ)) {
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** Append-only store of commit objects.
+ * Every commit is appended as one length-prefixed record to the
+ * commit log, and a fixed-size entry (raw 20-byte hash followed by the
+ * record's offset in the log) is appended to the commit index.
+ * Adding a commit therefore writes one record, and reading a commit
+ * reads one record, no matter how long the history is.
+ * Repositories that still use the old allCommits file are imported
+ * into the log the first time the store is opened.
+ * Records may be stored raw or deflate-compressed (see Compression).
+ * Since version 2 of the log, records hold commits encoded by
+ * CommitCodec rather than Java serialization, and since version 3
+ * every record starts with the header giving its format, rather than
+ * only compressed ones; older logs are rewritten in the current format
+ * the first time they are opened.
+ * A record of a commit with a tree holds only the tree's hash, not the
+ * commit's files, which are read from the tree when first needed.
+ * Commits can also be looked up by any unique prefix of their hash,
+ * through a sorted array of all hashes that is searched by bisection.
+ * The most recently read commits are kept decoded in a CommitCache,
+ * so walking the same stretch of history again reads nothing; since
+ * commits are read one at a time by hash, following parents only as
+ * far as needed, the memory used stays bounded by the cache whatever
+ * the length of the history.
+ * @author Eesha Thaker
+ */
+class CommitStore {
+
+    /** Magic number at the start of the commit log. */
+    private static final byte[] MAGIC = {'G', 'L', 'O', 'G'};
+
+    /** Version of the record format in the commit log. */
+    static final int VERSION = 3;
+
+    /** Size of the header of the commit log: magic and version. */
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+
+    /** Size of a single commit index entry. */
+    private static final int ENTRY_SIZE = Utils.UID_LENGTH / 2 + 8;
+
+    /** File holding the commit records. */
+    private final File logFile;
+
+    /** File mapping commit hashes to offsets in logFile. */
+    private final File indexFile;
+
+    /** The new log being written by rewrite(). */
+    private final File newLogFile;
+
+    /** The new index being written by rewrite(). */
+    private final File newIndexFile;
+
+    /** Legacy file holding a serialized TreeMap of all commits. */
+    private final File legacyFile;
+
+    /** Commit hashes mapped to the offsets of their records, in the
+     * order in which they were added. Null until first loaded. */
+    private LinkedHashMap<String, Long> offsets;
+
+    /** The hashes of all stored commits, oldest first, so that the
+     * offsets of their records increase with their positions. Null until
+     * first needed, and extended as commits are added. */
+    private ArrayList<String> order;
+
+    /** The hashes of all stored commits in sorted order. Null until
+     * first needed, and whenever a commit has been added since. */
+    private String[] sorted;
+
+    /** True iff new records are written compressed. */
+    private boolean compressed;
+
+    /** Where commits read from the log read their files. */
+    private final TreeStore trees;
+
+    /** Commits most recently read from the log, decoded. */
+    private final CommitCache cache =
+            new CommitCache(CommitCache.DEFAULT_CAPACITY);
+
+    /** A commit store kept in the gitlet directory GITLETDIR. */
+    CommitStore(File gitletDir) {
+        this(gitletDir, new TreeStore(new ObjectStore(gitletDir)));
+    }
+
+    /** A commit store kept in the gitlet directory GITLETDIR, whose
+     * commits read their files from TREES. */
+    CommitStore(File gitletDir, TreeStore trees) {
+        this.trees = trees;
+        this.logFile = Utils.join(gitletDir, "commitLog");
+        this.indexFile = Utils.join(gitletDir, "commitIndex");
+        this.newLogFile = Utils.join(gitletDir, "commitLog.new");
+        this.newIndexFile = Utils.join(gitletDir, "commitIndex.new");
+        this.legacyFile = Utils.join(gitletDir, "allCommits");
+    }
+
+    /** Sets whether new records are written compressed to COMPRESSED. */
+    void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /** Sets the number of decoded commits kept in memory to SIZE. */
+    void setCacheSize(int size) {
+        cache.setCapacity(size);
+    }
+
+    /** Returns the cache of decoded commits, for its statistics. */
+    CommitCache cache() {
+        return cache;
+    }
+
+    /** Appends COMMIT to the store, unless a commit with the same
+     * hash has already been stored. */
+    void put(Commit commit) {
+        load();
+        if (offsets.containsKey(commit.getCurrID())) {
+            return;
+        }
+        append(commit);
+    }
+
+    /** Appends each of COMMITS that has not been stored yet, in order,
+     * writing the log and the index once for all of them. */
+    void putAll(Collection<Commit> commits) {
+        load();
+        LinkedHashMap<String, byte[]> records = new LinkedHashMap<>();
+        for (Commit commit : commits) {
+            if (!offsets.containsKey(commit.getCurrID())) {
+                records.putIfAbsent(commit.getCurrID(), encode(commit));
+            }
+        }
+        if (!records.isEmpty()) {
+            append(records);
+        }
+    }
+
+    /** Returns the commit with hash ID, or null if there is none. The
+     * commit returned is the caller's own to change; the cached one is
+     * not. */
+    Commit get(String id) {
+        if (id == null) {
+            return null;
+        }
+        Commit result = cache.get(id);
+        if (result == null) {
+            load();
+            Long offset = offsets.get(id);
+            if (offset == null) {
+                return null;
+            }
+            result = decode(readRecord(offset));
+            cache.put(id, result);
+        }
+        return result.duplicate();
+    }
+
+    /** Passes the record of each stored commit to ACTION, oldest first,
+     * reading the log once from start to end rather than seeking to each
+     * record. The records are neither decoded nor cached; decode() turns
+     * them into commits, so that a walk over the whole history can
+     * decode them on other threads without evicting the commits in the
+     * cache. */
+    void forEachRecord(Consumer<byte[]> action) {
+        load();
+        try (DataInputStream log = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(logFile), Utils.CHUNK_SIZE))) {
+            long position = 0;
+            for (long offset : offsets.values()) {
+                if (offset < position) {
+                    action.accept(readRecord(offset));
+                    continue;
+                }
+                log.skipNBytes(offset - position);
+                byte[] record = new byte[log.readInt()];
+                log.readFully(record);
+                position = offset + 4 + record.length;
+                action.accept(record);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the store from which commits read their files. */
+    TreeStore trees() {
+        return trees;
+    }
+
+    /** Returns true iff a commit with hash ID has been stored. */
+    boolean contains(String id) {
+        load();
+        return offsets.containsKey(id);
+    }
+
+    /** Returns the hashes of all stored commits, oldest first. */
+    Set<String> ids() {
+        load();
+        return offsets.keySet();
+    }
+
+    /** Returns the hash of the commit at position POS among the stored
+     * commits, oldest first. */
+    String id(int pos) {
+        return order().get(pos);
+    }
+
+    /** Returns the position of the commit with hash ID among the stored
+     * commits, oldest first, or -1 if it has not been stored. The offset
+     * of its record is found through the index, and since records are
+     * appended in order, its position by bisection on offsets. */
+    int position(String id) {
+        load();
+        Long offset = offsets.get(id);
+        if (offset == null) {
+            return -1;
+        }
+        List<String> ids = order();
+        int lo = 0, hi = ids.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long cmp = offsets.get(ids.get(mid));
+            if (cmp < offset) {
+                lo = mid + 1;
+            } else if (cmp > offset) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the hashes of all stored commits that start with PREFIX,
+     * in sorted order. More than one hash means PREFIX is ambiguous. */
+    List<String> resolve(String prefix) {
+        load();
+        String key = prefix.toLowerCase();
+        if (key.length() == Utils.UID_LENGTH) {
+            return offsets.containsKey(key) ? List.of(key) : List.of();
+        }
+        String[] ids = sortedIds();
+        List<String> result = new ArrayList<>();
+        for (int i = lowerBound(ids, key); i < ids.length && ids[i].startsWith(key); i += 1) {
+            result.add(ids[i]);
+        }
+        return result;
+    }
+
+    /** Returns the shortest prefix of the stored commit hash ID, and no
+     * shorter than MINLENGTH, that no other stored commit shares. */
+    String abbreviate(String id, int minLength) {
+        String[] ids = sortedIds();
+        int i = lowerBound(ids, id);
+        int length = minLength;
+        if (i > 0) {
+            length = Math.max(length, commonPrefix(id, ids[i - 1]) + 1);
+        }
+        if (i + 1 < ids.length) {
+            length = Math.max(length, commonPrefix(id, ids[i + 1]) + 1);
+        }
+        return id.substring(0, Math.min(length, id.length()));
+    }
+
+    /** Returns the number of stored commits. */
+    int size() {
+        load();
+        return offsets.size();
+    }
+
+    /** Rewrites the log with every record compressed, returning the
+     * number of bytes saved. The new log and index are written beside
+     * the old ones and then renamed over them, as by rewrite(). */
+    long compressAll() {
+        load();
+        long before = logFile.length();
+        rewrite(record -> Compression.compress(Compression.decompress(record)));
+        return before - logFile.length();
+    }
+
+    /** Rewrites the log, replacing each record by the result of applying
+     * CONVERT to it. The new log and index are written beside the old
+     * ones, synced to disk, and then renamed over them, the log first.
+     * A crash before the log is renamed leaves the old files in place;
+     * one between the two renames leaves only the new index beside
+     * them, which finishRewrite() then renames over the old index. */
+    private void rewrite(Function<byte[], byte[]> convert) {
+        LinkedHashMap<String, byte[]> records = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : offsets.entrySet()) {
+            records.put(e.getKey(), convert.apply(readRecord(e.getValue())));
+        }
+        newLogFile.delete();
+        newIndexFile.delete();
+        LinkedHashMap<String, Long> written = append(newLogFile, newIndexFile, records);
+        sync(newLogFile);
+        sync(newIndexFile);
+        replace(newLogFile, logFile);
+        replace(newIndexFile, indexFile);
+        offsets = written;
+        order = null;
+        sorted = null;
+    }
+
+    /** Completes or abandons a rewrite() cut short by a crash: if the
+     * new log is still beside the old one, nothing was renamed and the
+     * new files are deleted; if only the new index is left, the log was
+     * replaced and the index is renamed over the old one. */
+    private void finishRewrite() {
+        if (newLogFile.exists()) {
+            newLogFile.delete();
+            newIndexFile.delete();
+        } else if (newIndexFile.exists()) {
+            replace(newIndexFile, indexFile);
+        }
+    }
+
+    /** Forces the contents of FILE to disk. */
+    private static void sync(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cuts FILE down to its first LENGTH bytes. */
+    private static void truncate(File file, long length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames the completely written file TEMP to TARGET, atomically. */
+    private static void replace(File temp, File target) {
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the hashes of all stored commits, oldest first. */
+    private List<String> order() {
+        load();
+        if (order == null) {
+            order = new ArrayList<>(offsets.keySet());
+        }
+        return order;
+    }
+
+    /** Returns the hashes of all stored commits in sorted order. */
+    private String[] sortedIds() {
+        load();
+        if (sorted == null) {
+            sorted = offsets.keySet().toArray(new String[0]);
+            Arrays.sort(sorted);
+        }
+        return sorted;
+    }
+
+    /** Returns the index of the first of the sorted IDS that is not
+     * less than KEY. */
+    private static int lowerBound(String[] ids, String key) {
+        int lo = 0, hi = ids.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ids[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the length of the longest common prefix of A and B. */
+    private static int commonPrefix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n)) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Returns the bytes of the record at OFFSET in the log. */
+    private byte[] readRecord(long offset) {
+        try (RandomAccessFile log = new RandomAccessFile(logFile, "r")) {
+            log.seek(offset);
+            byte[] record = new byte[log.readInt()];
+            log.readFully(record);
+            return record;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the commit index into memory, importing the legacy
+     * allCommits file first if this repository has not been
+     * converted yet. Index entries that point past the end of the
+     * log (left behind by an interrupted write) are ignored. */
+    @SuppressWarnings("unchecked")
+    private void load() {
+        if (offsets != null) {
+            return;
+        }
+        offsets = new LinkedHashMap<>();
+        finishRewrite();
+        if (!indexFile.exists()) {
+            if (legacyFile.exists()) {
+                importLegacy(Utils.readObject(legacyFile, TreeMap.class));
+            }
+            return;
+        }
+        byte[] contents = Utils.readContents(indexFile);
+        if (contents.length % ENTRY_SIZE != 0) {
+            //drop the partial entry left by an interrupted append
+            truncate(indexFile, contents.length - contents.length % ENTRY_SIZE);
+        }
+        ByteBuffer index = ByteBuffer.wrap(contents);
+        long logLength = logFile.length();
+        byte[] hash = new byte[Utils.UID_LENGTH / 2];
+        while (index.remaining() >= ENTRY_SIZE) {
+            index.get(hash);
+            long offset = index.getLong();
+            if (offset < logLength) {
+                offsets.put(Utils.toHex(hash), offset);
+            }
+        }
+        if (logVersion() < VERSION) {
+            migrate();
+        }
+    }
+
+    /** Adds all commits in LEGACY, a map from commit hashes to commits
+     * as kept in the old allCommits file, oldest first. */
+    private void importLegacy(TreeMap<String, Commit> legacy) {
+        List<Commit> commits = new ArrayList<>(legacy.values());
+        commits.sort(Comparator.comparing(Commit::getTimeStamp));
+        for (Commit c : commits) {
+            if (!offsets.containsKey(c.getCurrID())) {
+                append(c);
+            }
+        }
+    }
+
+    /** Appends the record for COMMIT to the log and its entry to the
+     * index. The record is written before the index entry so that an
+     * interrupted append never leaves an entry without a record. */
+    private void append(Commit commit) {
+        append(commit.getCurrID(), encode(commit));
+    }
+
+    /** Appends RECORD, the encoded commit with hash ID, to the log and
+     * its entry to the index. */
+    private void append(String id, byte[] record) {
+        append(Map.of(id, record));
+    }
+
+    /** Appends RECORDS, encoded commits keyed by hash in the order they
+     * are to be stored, to the log and their entries to the index,
+     * opening each file once. */
+    private void append(Map<String, byte[]> records) {
+        LinkedHashMap<String, Long> added = append(logFile, indexFile, records);
+        offsets.putAll(added);
+        if (order != null) {
+            order.addAll(added.keySet());
+        }
+        sorted = null;
+    }
+
+    /** Appends RECORDS to the log LOG and their entries to the index
+     * INDEX, starting the log if it is empty, and returns the offsets of
+     * the records, by hash. */
+    private static LinkedHashMap<String, Long> append(File log, File index,
+                                                      Map<String, byte[]> records) {
+        try {
+            if (!log.exists() || log.length() == 0) {
+                try (DataOutputStream header = new DataOutputStream(
+                        new FileOutputStream(log))) {
+                    header.write(MAGIC);
+                    header.writeInt(VERSION);
+                }
+            }
+            long offset = log.length();
+            LinkedHashMap<String, Long> added = new LinkedHashMap<>();
+            ByteBuffer entries = ByteBuffer.allocate(records.size() * ENTRY_SIZE);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(log, true), Utils.CHUNK_SIZE))) {
+                for (Map.Entry<String, byte[]> record : records.entrySet()) {
+                    out.writeInt(record.getValue().length);
+                    out.write(record.getValue());
+                    entries.put(Utils.fromHex(record.getKey()));
+                    entries.putLong(offset);
+                    added.put(record.getKey(), offset);
+                    offset += 4 + record.getValue().length;
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(index, true)) {
+                out.write(entries.array());
+            }
+            return added;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the record bytes for COMMIT. */
+    private byte[] encode(Commit commit) {
+        byte[] record = CommitCodec.encode(commit);
+        return compressed ? Compression.compress(record) : Compression.store(record);
+    }
+
+    /** Returns the commit stored in RECORD. */
+    Commit decode(byte[] record) {
+        return CommitCodec.decode(Compression.decompress(record), trees);
+    }
+
+    /** Returns the version of the log, or VERSION if there is no log
+     * yet. */
+    private int logVersion() {
+        if (logFile.length() < HEADER_SIZE) {
+            return VERSION;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(logFile, "r")) {
+            log.seek(MAGIC.length);
+            return log.readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrites a log of an older version in the current format,
+     * keeping each record compressed or not as it was. Records of
+     * version 1 are Java-serialized, and are encoded again; raw records
+     * before version 3 have no header, and are given one. Such records
+     * start with the version byte of CommitCodec or with the magic number
+     * of Java serialization, never with a header, so the compressed ones
+     * are told apart safely. Being done by rewrite(), a migration
+     * interrupted by a crash leaves either the old log and index or the
+     * new ones, and in the first case is simply run again. */
+    private void migrate() {
+        rewrite(record -> {
+            boolean compressed = Compression.isCompressed(record);
+            byte[] contents = compressed ? Compression.decompress(record) : record;
+            if (CommitCodec.isJavaSerialized(contents)) {
+                contents = CommitCodec.encode(Utils.deserialize(contents, Commit.class));
+            }
+            return compressed ? Compression.compress(contents) : Compression.store(contents);
+        });
+    }
+}
@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Reading and writing of stored objects, raw or deflate-compressed.
+ * Every object starts with a four-byte header giving its format, so
+ * the format is never guessed from the contents. A raw object is the
+ * header RAW followed by the contents as they are. A compressed object
+ * is the header DEFLATED, the length of the uncompressed contents as a
+ * long, and the deflated contents. Compressed and raw objects can be
+ * mixed freely in one repository; anything without a header is
+ * rejected.
+ * @author Eesha Thaker
+ */
+class Compression {
+
+    /** Header of a raw object. */
+    private static final byte[] RAW = {0, 'G', 'R', 1};
+
+    /** Header of a compressed object. */
+    private static final byte[] DEFLATED = {0, 'G', 'Z', 1};
+
+    /** Size of the header of a compressed object, with its length. */
+    static final int HEADER_SIZE = DEFLATED.length + 8;
+
+    /** Largest number of bytes deflate can inflate from one byte. */
+    private static final int MAX_RATIO = 1032;
+
+    /** Smallest buffer used when compressing. */
+    private static final int MIN_BUFFER = 512;
+
+    /** Returns true iff DATA starts with the header of a compressed
+     * object. */
+    static boolean isCompressed(byte[] data) {
+        return isCompressed(ByteBuffer.wrap(data));
+    }
+
+    /** Returns true iff the remaining bytes of DATA start with the
+     * header of a compressed object. */
+    static boolean isCompressed(ByteBuffer data) {
+        return data.remaining() >= HEADER_SIZE && startsWith(data, DEFLATED);
+    }
+
+    /** Returns true iff FILE holds a compressed object. */
+    static boolean isCompressed(File file) {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            return in.readNBytes(header, 0, HEADER_SIZE) == HEADER_SIZE
+                    && isCompressed(header);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns DATA as a compressed object. */
+    static byte[] compress(byte[] data) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream out = compressing(result, data.length)) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.toByteArray();
+    }
+
+    /** Returns DATA as a raw object. */
+    static byte[] store(byte[] data) {
+        byte[] result = Arrays.copyOf(RAW, RAW.length + data.length);
+        System.arraycopy(data, 0, result, RAW.length, data.length);
+        return result;
+    }
+
+    /** Returns the contents of the object DATA, raw or compressed. */
+    static byte[] decompress(byte[] data) {
+        return decompress(ByteBuffer.wrap(data));
+    }
+
+    /** Returns the contents of the object in the remaining bytes of DATA,
+     * raw or compressed. DATA may be a slice of a mapped file, which is
+     * then inflated in place without copying. */
+    static byte[] decompress(ByteBuffer data) {
+        if (data.remaining() >= RAW.length && startsWith(data, RAW)) {
+            byte[] result = new byte[data.remaining() - RAW.length];
+            data.get(data.position() + RAW.length, result);
+            return result;
+        } else if (!isCompressed(data)) {
+            throw new IllegalArgumentException("not a gitlet object");
+        }
+        long length = data.getLong(data.position() + DEFLATED.length);
+        long deflated = data.remaining() - HEADER_SIZE;
+        if (length < 0 || length > Integer.MAX_VALUE - 8
+                || length > deflated * MAX_RATIO) {
+            throw new IllegalArgumentException("compressed object has a bad length");
+        }
+        byte[] result = new byte[(int) length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.slice(data.position() + HEADER_SIZE, (int) deflated));
+            int n = 0;
+            while (n < result.length && !inflater.finished()) {
+                int inflated = inflater.inflate(result, n, result.length - n);
+                if (inflated == 0
+                        && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("truncated compressed object");
+                }
+                n += inflated;
+            }
+            if (n < result.length) {
+                throw new IllegalArgumentException("compressed object is too short");
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Writes the contents of FROM to TO as a compressed object,
+     * streaming in chunks of Utils.CHUNK_SIZE bytes. */
+    static void compress(File from, File to) {
+        try (InputStream in = new FileInputStream(from)) {
+            compress(in, from.length(), to);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of the object in FROM, which must be raw, to
+     * TO as a compressed object, streaming as compress(File, File) does. */
+    static void recompress(File from, File to) {
+        try (InputStream in = open(from)) {
+            compress(in, from.length() - RAW.length, to);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of FROM to TO as a raw object, streaming in
+     * chunks of Utils.CHUNK_SIZE bytes. */
+    static void store(File from, File to) {
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new BufferedOutputStream(
+                     new FileOutputStream(to), Utils.CHUNK_SIZE)) {
+            out.write(RAW);
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of the object in FROM, raw or compressed, to
+     * TO, streaming in chunks of Utils.CHUNK_SIZE bytes. TO is not
+     * touched if FROM does not hold an object. */
+    static void copyContents(File from, File to) {
+        try (InputStream in = open(from);
+             OutputStream out = new BufferedOutputStream(
+                     new FileOutputStream(to), Utils.CHUNK_SIZE)) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff the remaining bytes of DATA, of which there are
+     * at least as many as in HEADER, start with HEADER. */
+    private static boolean startsWith(ByteBuffer data, byte[] header) {
+        for (int i = 0; i < header.length; i += 1) {
+            if (data.get(data.position() + i) != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes the contents read from IN, LENGTH bytes, to TO as a
+     * compressed object. */
+    private static void compress(InputStream in, long length, File to)
+            throws IOException {
+        try (OutputStream out = compressing(new FileOutputStream(to), length)) {
+            in.transferTo(out);
+        }
+    }
+
+    /** Returns a stream over the contents of the object in FILE, raw or
+     * compressed, positioned after its header. */
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(
+                new FileInputStream(file), Utils.CHUNK_SIZE);
+        byte[] header = new byte[RAW.length];
+        if (in.readNBytes(header, 0, header.length) < header.length) {
+            header = null;
+        }
+        if (Arrays.equals(header, RAW)) {
+            return in;
+        } else if (!Arrays.equals(header, DEFLATED)) {
+            in.close();
+            throw new IllegalArgumentException("not a gitlet object");
+        }
+        in.skipNBytes(HEADER_SIZE - DEFLATED.length);
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, Utils.CHUNK_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns a stream that writes the header for contents of LENGTH
+     * bytes to OUT, then deflates everything written to it into OUT.
+     * Its buffer is no larger than small contents need. */
+    private static OutputStream compressing(OutputStream out, long length)
+            throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.write(DEFLATED);
+        header.writeLong(length);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        int bufferSize = (int) Math.min(Utils.CHUNK_SIZE, Math.max(MIN_BUFFER, length));
+        return new DeflaterOutputStream(header, deflater, bufferSize) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
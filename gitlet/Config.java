@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/** Repository-level settings, kept as key/value pairs in the config
+ * file of the gitlet directory and changed with the config command.
+ * @author Eesha Thaker
+ */
+class Config {
+
+    /** Whether new objects are stored deflate-compressed. */
+    static final String COMPRESSION = "core.compression";
+
+    /** Number of decoded commits kept in memory (see CommitCache). */
+    static final String COMMIT_CACHE = "core.commitCache";
+
+    /** Number of threads used to scan the working directory. */
+    static final String STATUS_WORKERS = "status.workers";
+
+    /** Number of threads used to write files when checking out. */
+    static final String CHECKOUT_WORKERS = "checkout.workers";
+
+    /** Number of threads used to decode commits for global-log. */
+    static final String LOG_WORKERS = "log.workers";
+
+    /** Algorithm used to compare versions of files: myers (the
+     * default), histogram or lcs. */
+    static final String DIFF_ALGORITHM = "diff.algorithm";
+
+    /** File in which the settings are persisted. */
+    private final File configFile;
+
+    /** The settings, read from configFile when first needed. */
+    private Properties settings;
+
+    /** The settings of the repository in gitlet directory GITLETDIR. */
+    Config(File gitletDir) {
+        this.configFile = Utils.join(gitletDir, "config");
+    }
+
+    /** Returns the value of setting KEY, or DEFAULTVALUE if it is
+     * not set. */
+    String get(String key, String defaultValue) {
+        load();
+        return settings.getProperty(key, defaultValue);
+    }
+
+    /** Returns the value of setting KEY as a boolean, or DEFAULTVALUE
+     * if it is not set. */
+    boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, Boolean.toString(defaultValue)));
+    }
+
+    /** Returns the value of setting KEY as an int, or DEFAULTVALUE
+     * if it is not set or is not a number. */
+    int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, Integer.toString(defaultValue)).trim());
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+
+    /** Returns the diff algorithm named by setting DIFF_ALGORITHM, or
+     * Diff.Algorithm.MYERS if it is not set or names no algorithm. */
+    Diff.Algorithm diffAlgorithm() {
+        try {
+            return Diff.Algorithm.valueOf(get(DIFF_ALGORITHM, "myers").trim().toUpperCase());
+        } catch (IllegalArgumentException excp) {
+            return Diff.Algorithm.MYERS;
+        }
+    }
+
+    /** Sets KEY to VALUE and saves the settings. */
+    void set(String key, String value) {
+        load();
+        settings.setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(configFile)) {
+            settings.store(out, "gitlet repository settings");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the settings from configFile, if that has not been
+     * done yet. A missing file means every setting has its default. */
+    private void load() {
+        if (settings != null) {
+            return;
+        }
+        settings = new Properties();
+        if (!configFile.isFile()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(configFile)) {
+            settings.load(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
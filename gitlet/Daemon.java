@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/** Long-lived server that runs gitlet commands in one JVM.
+ * Started with "gitlet daemon" in a repository, it listens on a Unix
+ * domain socket in the .gitlet directory and keeps a single Repo, so
+ * the commit store's index, the commit graph, the blob set, the stat
+ * cache and the pack indexes stay loaded between commands instead of
+ * being read again by a new JVM each time. Branches, HEAD and the
+ * staging area are small and are still read from their files by each
+ * command, so they are never stale.
+ * While the socket accepts connections, Main acts as a thin client:
+ * it sends its arguments (a count, then each argument as UTF) and
+ * copies everything the daemon writes back to standard output.
+ * Commands are run one at a time, in the order they arrive. All
+ * commands on the repository must go through the daemon while it runs,
+ * which Main ensures. "gitlet daemon stop" shuts it down.
+ * @author Eesha Thaker
+ */
+class Daemon {
+
+    /** Name of the socket file in the gitlet directory. */
+    static final String SOCKET = "daemon.sock";
+
+    /** Arguments that shut the daemon down. */
+    private static final String[] STOP = {"daemon", "stop"};
+
+    /** The gitlet directory of the repository served. */
+    private final File gitletDir;
+
+    /** A daemon serving the repository whose gitlet directory is
+     * GITLETDIR. */
+    Daemon(File gitletDir) {
+        this.gitletDir = gitletDir;
+    }
+
+    /** Listens on the socket and runs each command received, until
+     * asked to stop. */
+    void serve() throws IOException {
+        if (!gitletDir.isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        File socket = Utils.join(gitletDir, SOCKET);
+        if (running(gitletDir)) {
+            System.out.println("A Gitlet daemon is already running.");
+            return;
+        }
+        socket.delete();
+        Repo repo = new Repo();
+        PrintStream stdout = System.out;
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            stdout.println("Serving " + gitletDir.getParent() + ".");
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(repo, client);
+                } catch (EOFException excp) {
+                    //a connection that sent no command, such as a probe
+                } catch (IOException excp) {
+                    excp.printStackTrace();
+                } finally {
+                    System.setOut(stdout);
+                }
+            }
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Runs the command sent by CLIENT on REPO, sending back its
+     * output. Returns false iff the command was to stop. */
+    private boolean handle(Repo repo, SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(client), Utils.CHUNK_SIZE));
+        if (Arrays.equals(args, STOP)) {
+            out.println("Daemon stopped. " + repo.getCommitStore().cache());
+            out.flush();
+            return false;
+        }
+        System.setOut(out);
+        try {
+            Main.run(repo, args);
+            repo.flush();
+        } catch (RuntimeException | IOException | ParseException excp) {
+            repo.discard();
+            excp.printStackTrace();
+            out.println(excp);
+        }
+        out.flush();
+        return true;
+    }
+
+    /** Sends ARGS to the daemon serving the repository whose gitlet
+     * directory is GITLETDIR, and copies its output to OUT. Returns
+     * false, having sent nothing, if no daemon is listening. */
+    static boolean forward(String[] args, File gitletDir, OutputStream out)
+            throws IOException {
+        File socket = Utils.join(gitletDir, SOCKET);
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = connect(socket);
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            channel.shutdownOutput();
+            InputStream response = Channels.newInputStream(channel);
+            response.transferTo(out);
+            out.flush();
+        }
+        return true;
+    }
+
+    /** Returns true iff a daemon serving the repository whose gitlet
+     * directory is GITLETDIR accepts connections. */
+    static boolean running(File gitletDir) {
+        File socket = Utils.join(gitletDir, SOCKET);
+        if (!socket.exists()) {
+            return false;
+        }
+        try {
+            connect(socket).close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Returns a connection to the daemon listening on SOCKET. */
+    private static SocketChannel connect(File socket) throws IOException {
+        return SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+    }
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line deltas between versions of a text file.
+ * A delta is the edit script produced by Diff.diffs() for the lines of
+ * a base version and a target version, together with the target lines
+ * that the script inserts; applying it to the base rebuilds the target
+ * exactly. Lines keep their terminators, so files without a final
+ * newline survive the round trip.
+ * @author Eesha Thaker
+ */
+class Delta {
+
+    /** Largest number of line insertions and deletions searched for in
+     * any one region of a delta, bounding the time Diff may take. Regions
+     * that differ more are stored as replaced outright. */
+    static final int MAX_EDITS = 1 << 12;
+
+    /** Returns the contents of DATA as a String, or null if DATA is not
+     * valid UTF-8 text. */
+    static String text(byte[] data) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data)).toString();
+        } catch (CharacterCodingException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the lines of TEXT, each including its line terminator. */
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == '\n') {
+                result.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** Returns the delta that turns BASE into TARGET, found by Diff's
+     * default algorithm. */
+    static byte[] create(List<String> base, List<String> target) {
+        return create(base, target, Diff.Algorithm.MYERS);
+    }
+
+    /** Returns the delta that turns BASE into TARGET, found by Diff
+     * using ALGORITHM. Lines common to the start and end of both are
+     * left out of the comparison. */
+    static byte[] create(List<String> base, List<String> target,
+                         Diff.Algorithm algorithm) {
+        int prefix = 0;
+        while (prefix < base.size() && prefix < target.size()
+                && base.get(prefix).equals(target.get(prefix))) {
+            prefix += 1;
+        }
+        int suffix = 0;
+        while (suffix < base.size() - prefix && suffix < target.size() - prefix
+                && base.get(base.size() - 1 - suffix)
+                   .equals(target.get(target.size() - 1 - suffix))) {
+            suffix += 1;
+        }
+        List<String> changed1 = base.subList(prefix, base.size() - suffix);
+        List<String> changed2 = target.subList(prefix, target.size() - suffix);
+        Diff diff = new Diff();
+        diff.setAlgorithm(algorithm);
+        diff.setEditLimit(MAX_EDITS);
+        diff.setSequences(changed1, changed2);
+        int[] edits = diff.diffs();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(edits.length / 4);
+            for (int k = 0; k < edits.length; k += 4) {
+                out.writeInt(prefix + edits[k]);
+                out.writeInt(edits[k + 1]);
+                out.writeInt(edits[k + 3]);
+                for (int i = 0; i < edits[k + 3]; i += 1) {
+                    byte[] line = target.get(prefix + edits[k + 2] + i)
+                            .getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(line.length);
+                    out.write(line);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        List<String> lines = lines(new String(base, StandardCharsets.UTF_8));
+        StringBuilder result = new StringBuilder(base.length);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta))) {
+            int next = 0;
+            for (int edits = in.readInt(); edits > 0; edits -= 1) {
+                int start = in.readInt(), removed = in.readInt(), added = in.readInt();
+                for (; next < start; next += 1) {
+                    result.append(lines.get(next));
+                }
+                next += removed;
+                for (int i = 0; i < added; i += 1) {
+                    byte[] line = new byte[in.readInt()];
+                    in.readFully(line);
+                    result.append(new String(line, StandardCharsets.UTF_8));
+                }
+            }
+            for (; next < lines.size(); next += 1) {
+                result.append(lines.get(next));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
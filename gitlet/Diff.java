@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
@@ -19,9 +20,56 @@ import static java.lang.Math.max;
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
  *  next.
+ *  By default the common subsequence is found with Myers' O(ND) algorithm
+ *  in its linear-space form, which repeatedly finds the middle snake of
+ *  an optimal edit path and recurses on either side of it.  Its time
+ *  grows with the size of the inputs times the number of edits, and its
+ *  memory only with the size of the inputs.  Lines are compared through
+ *  int IDs assigned up front, so equal lines are found by comparing
+ *  ints.  Algorithm.HISTOGRAM instead anchors the comparison on the
+ *  rarest lines the two sequences share, which aligns source code with
+ *  many repeated lines (braces, blank lines) more naturally.  The
+ *  original algorithm, which fills a memo table of the lengths of the
+ *  common subsequences of all pairs of prefixes, remains available as
+ *  Algorithm.LCS for reference.
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** The algorithms with which common subsequences may be found. */
+    public enum Algorithm {
+        /** Myers' linear-space O(ND) algorithm. */
+        MYERS,
+        /** Histogram diff: split the sequences around the longest run
+         *  of matches containing the line that occurs least often, and
+         *  compare the parts on either side the same way. */
+        HISTOGRAM,
+        /** Dynamic programming over all pairs of prefixes, using
+         *  quadratic time and space. */
+        LCS
+    }
+
+    /** Use ALGORITHM to find common subsequences from now on. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+        _common = null;
+    }
+
+    /** Return the algorithm used to find common subsequences. */
+    public Algorithm algorithm() {
+        return _algorithm;
+    }
+
+    /** Limit the search for a common subsequence to edit paths of
+     *  at most LIMIT insertions and deletions in each region compared.
+     *  A region that needs more is treated as entirely replaced, so the
+     *  result is still a valid edit, though perhaps not a minimal one.
+     *  Applies to Algorithm.MYERS, and to the regions that
+     *  Algorithm.HISTOGRAM hands over to it. */
+    public void setEditLimit(int limit) {
+        _editLimit = limit;
+        _common = null;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
@@ -29,6 +77,7 @@ public class Diff {
         _lines2 = new ArrayList<>(seq2);
         _lls = null;
         _todo = null;
+        _common = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -50,6 +99,7 @@ public class Diff {
         }
         _lls = null;
         _todo = null;
+        _common = null;
     }
 
     /** Return the first of the current sequences. */
@@ -73,7 +123,8 @@ public class Diff {
     }
 
     /** Return the length of the longest subsequence of the first K1 and K2
-     *  items, respectively, of the current data sequences. */
+     *  items, respectively, of the current data sequences.  Always uses
+     *  the memo table of Algorithm.LCS. */
     public int lls(int k1, int k2) {
         checkData();
         if (_lls == null) {
@@ -135,17 +186,22 @@ public class Diff {
      *  data subsequences. */
     public int lls() {
         checkData();
-        return lls(_lines1.size(), _lines2.size());
+        if (_algorithm == Algorithm.LCS) {
+            return lls(_lines1.size(), _lines2.size());
+        }
+        int[] common = commonSubsequence();
+        int result = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            result += common[k];
+        }
+        return result;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -166,6 +222,20 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
+        checkData();
+        if (_algorithm == Algorithm.LCS) {
+            return tableSubsequence();
+        }
+        if (_common == null) {
+            _common = runs(_algorithm == Algorithm.HISTOGRAM
+                           ? histogramMatches() : myersMatches());
+        }
+        return _common.clone();
+    }
+
+    /** Return commonSubsequence() as found from the memo table of
+     *  lls. */
+    private int[] tableSubsequence() {
         ArrayDeque<Integer> resultList = new ArrayDeque<>();
 
         int k1, k2;
@@ -224,6 +294,285 @@ public class Diff {
         return toIntArr(result);
     }
 
+    /** Return the matched positions of a shortest edit between the
+     *  current sequences found by Myers' algorithm, as pairs of
+     *  positions in the first and second sequence, in increasing
+     *  order. */
+    private Matches myersMatches() {
+        assignIds();
+        int n = _ids1.length, m = _ids2.length;
+        _forward = new int[2 * (n + m) + 3];
+        _backward = new int[2 * (n + m) + 3];
+        Matches result = new Matches();
+        compare(0, n, 0, m, result);
+        _forward = _backward = null;
+        return result;
+    }
+
+    /** Add to MATCHES, in order, the matched positions of a shortest
+     *  edit turning items [LO1 .. HI1 - 1] of the first sequence into
+     *  items [LO2 .. HI2 - 1] of the second. */
+    private void compare(int lo1, int hi1, int lo2, int hi2,
+                         Matches matches) {
+        while (lo1 < hi1 && lo2 < hi2 && _ids1[lo1] == _ids2[lo2]) {
+            matches.add(lo1, lo2);
+            lo1 += 1;
+            lo2 += 1;
+        }
+        int suffix;
+        suffix = 0;
+        while (hi1 > lo1 && hi2 > lo2
+               && _ids1[hi1 - 1] == _ids2[hi2 - 1]) {
+            hi1 -= 1;
+            hi2 -= 1;
+            suffix += 1;
+        }
+        if (lo1 < hi1 && lo2 < hi2) {
+            int[] snake = middleSnake(lo1, hi1, lo2, hi2);
+            if (snake != null) {
+                compare(lo1, snake[0], lo2, snake[1], matches);
+                for (int k = 0; k < snake[2] - snake[0]; k += 1) {
+                    matches.add(snake[0] + k, snake[1] + k);
+                }
+                compare(snake[2], hi1, snake[3], hi2, matches);
+            }
+        }
+        for (int k = 0; k < suffix; k += 1) {
+            matches.add(hi1 + k, hi2 + k);
+        }
+    }
+
+    /** Return the middle snake of a shortest edit turning items
+     *  [LO1 .. HI1 - 1] of the first sequence into items [LO2 .. HI2 - 1]
+     *  of the second, as {x0, y0, x1, y1}: the diagonal run of matches
+     *  from (x0, y0) to (x1, y1) that the middle edit of the path ends
+     *  in.  Returns null if the edit needs more than the edit limit.
+     *  Forward paths are extended from the start and backward paths
+     *  from the end, one edit at a time, until they overlap. */
+    private int[] middleSnake(int lo1, int hi1, int lo2, int hi2) {
+        int n = hi1 - lo1, m = hi2 - lo2;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int offset = n + m + 1;
+        int[] vf = _forward, vb = _backward;
+        vf[offset + 1] = 0;
+        vb[offset + 1] = 0;
+        int maxD = (n + m + 1) / 2;
+        for (int d = 0; d <= maxD; d += 1) {
+            if (2 * d > _editLimit) {
+                return null;
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[offset + k - 1] < vf[offset + k + 1])) {
+                    x = vf[offset + k + 1];
+                } else {
+                    x = vf[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _ids1[lo1 + x] == _ids2[lo2 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[offset + k] = x;
+                int back = delta - k;
+                if (odd && back >= -(d - 1) && back <= d - 1
+                    && x + vb[offset + back] >= n) {
+                    return new int[] { lo1 + x0, lo2 + y0, lo1 + x, lo2 + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[offset + k - 1] < vb[offset + k + 1])) {
+                    x = vb[offset + k + 1];
+                } else {
+                    x = vb[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _ids1[hi1 - x - 1] == _ids2[hi2 - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[offset + k] = x;
+                int fwd = delta - k;
+                if (!odd && fwd >= -d && fwd <= d
+                    && x + vf[offset + fwd] >= n) {
+                    return new int[] { hi1 - x, hi2 - y, hi1 - x0, hi2 - y0 };
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return the matched positions found by the histogram algorithm
+     *  for the current sequences, as pairs of positions in the first
+     *  and second sequence, in increasing order.  Regions still to be
+     *  compared are kept on a work list rather than the call stack, so
+     *  long runs of splits cannot overflow it.  Regions in which no line
+     *  occurs at most MAX_CHAIN times are compared by Myers' algorithm. */
+    private Matches histogramMatches() {
+        assignIds();
+        int n = _ids1.length, m = _ids2.length;
+        _forward = new int[2 * (n + m) + 3];
+        _backward = new int[2 * (n + m) + 3];
+        int[] partner = new int[n];
+        Arrays.fill(partner, -1);
+        Matches found = new Matches();
+        ArrayDeque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] { 0, n, 0, m });
+        while (!work.isEmpty()) {
+            int[] region = work.pop();
+            int lo1 = region[0], hi1 = region[1];
+            int lo2 = region[2], hi2 = region[3];
+            while (lo1 < hi1 && lo2 < hi2 && _ids1[lo1] == _ids2[lo2]) {
+                partner[lo1] = lo2;
+                lo1 += 1;
+                lo2 += 1;
+            }
+            while (hi1 > lo1 && hi2 > lo2
+                   && _ids1[hi1 - 1] == _ids2[hi2 - 1]) {
+                hi1 -= 1;
+                hi2 -= 1;
+                partner[hi1] = hi2;
+            }
+            if (lo1 == hi1 || lo2 == hi2) {
+                continue;
+            }
+            int[] anchor = rarestRun(lo1, hi1, lo2, hi2);
+            if (anchor == null) {
+                Matches matches = new Matches();
+                compare(lo1, hi1, lo2, hi2, matches);
+                for (int k = 0; k < matches.size; k += 1) {
+                    partner[matches.pos1[k]] = matches.pos2[k];
+                }
+                continue;
+            }
+            for (int k = 0; k < anchor[2] - anchor[0]; k += 1) {
+                partner[anchor[0] + k] = anchor[1] + k;
+            }
+            work.push(new int[] { lo1, anchor[0], lo2, anchor[1] });
+            work.push(new int[] { anchor[2], hi1, anchor[3], hi2 });
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (partner[i] >= 0) {
+                found.add(i, partner[i]);
+            }
+        }
+        _forward = _backward = null;
+        return found;
+    }
+
+    /** Return the run of matches between items [LO1 .. HI1 - 1] of the
+     *  first sequence and [LO2 .. HI2 - 1] of the second whose rarest item
+     *  occurs fewest times in the first, preferring longer runs among
+     *  equally rare ones, as {x0, y0, x1, y1}.  Returns null if
+     *  every common item occurs more than MAX_CHAIN times. */
+    private int[] rarestRun(int lo1, int hi1, int lo2, int hi2) {
+        HashMap<Integer, ArrayList<Integer>> occurrences = new HashMap<>();
+        for (int i = lo1; i < hi1; i += 1) {
+            occurrences.computeIfAbsent(_ids1[i], x -> new ArrayList<>())
+                .add(i);
+        }
+        int[] best = null;
+        int bestCount = MAX_CHAIN + 1;
+        int j = lo2;
+        while (j < hi2) {
+            int next = j + 1;
+            ArrayList<Integer> positions = occurrences.get(_ids2[j]);
+            if (positions != null && positions.size() <= MAX_CHAIN
+                && positions.size() <= bestCount) {
+                for (int i : positions) {
+                    int s1 = i, s2 = j, e1 = i + 1, e2 = j + 1;
+                    int count = positions.size();
+                    while (s1 > lo1 && s2 > lo2
+                           && _ids1[s1 - 1] == _ids2[s2 - 1]) {
+                        s1 -= 1;
+                        s2 -= 1;
+                        count = Math.min(count,
+                                         occurrences.get(_ids1[s1]).size());
+                    }
+                    while (e1 < hi1 && e2 < hi2 && _ids1[e1] == _ids2[e2]) {
+                        count = Math.min(count,
+                                         occurrences.get(_ids1[e1]).size());
+                        e1 += 1;
+                        e2 += 1;
+                    }
+                    if (count < bestCount
+                        || (count == bestCount
+                            && e1 - s1 > best[2] - best[0])) {
+                        best = new int[] { s1, s2, e1, e2 };
+                        bestCount = count;
+                    }
+                    next = Math.max(next, e2);
+                }
+            }
+            j = next;
+        }
+        return best;
+    }
+
+    /** Return MATCHES, which are in increasing order, grouped into runs
+     *  in the format of commonSubsequence(). */
+    private static int[] runs(Matches matches) {
+        ArrayList<Integer> result = new ArrayList<>();
+        int k;
+        k = 0;
+        while (k < matches.size) {
+            int L;
+            L = 1;
+            while (k + L < matches.size
+                   && matches.pos1[k + L] == matches.pos1[k] + L
+                   && matches.pos2[k + L] == matches.pos2[k] + L) {
+                L += 1;
+            }
+            result.add(matches.pos1[k]);
+            result.add(matches.pos2[k]);
+            result.add(L);
+            k += L;
+        }
+        int[] arr = new int[result.size()];
+        for (int i = 0; i < arr.length; i += 1) {
+            arr[i] = result.get(i);
+        }
+        return arr;
+    }
+
+    /** Set _ids1 and _ids2 to the current sequences with each distinct
+     *  item replaced by a distinct int. */
+    private void assignIds() {
+        HashMap<String, Integer> ids = new HashMap<>();
+        _ids1 = new int[_lines1.size()];
+        _ids2 = new int[_lines2.size()];
+        for (int i = 0; i < _ids1.length; i += 1) {
+            _ids1[i] = ids.computeIfAbsent(_lines1.get(i), x -> ids.size());
+        }
+        for (int i = 0; i < _ids2.length; i += 1) {
+            _ids2[i] = ids.computeIfAbsent(_lines2.get(i), x -> ids.size());
+        }
+    }
+
+    /** A growable list of pairs of matched positions. */
+    private static class Matches {
+        /** Positions in the first and second sequence. */
+        private int[] pos1 = new int[16], pos2 = new int[16];
+        /** Number of pairs. */
+        private int size;
+
+        /** Append the pair (I1, I2). */
+        void add(int i1, int i2) {
+            if (size == pos1.length) {
+                pos1 = Arrays.copyOf(pos1, 2 * size);
+                pos2 = Arrays.copyOf(pos2, 2 * size);
+            }
+            pos1[size] = i1;
+            pos2[size] = i2;
+            size += 1;
+        }
+    }
+
     /** Raise an exception if there are no current data sequences for
      *  comparison. */
     private void checkData() {
@@ -268,6 +617,29 @@ public class Diff {
      *  data sequences of lengths a and b, or -1 if not calculated. */
     private int[][] _lls;
 
+    /** Items occurring more often than this in a region are not used
+     *  as anchors by Algorithm.HISTOGRAM. */
+    private static final int MAX_CHAIN = 64;
+
+    /** The algorithm used to find common subsequences. */
+    private Algorithm _algorithm = Algorithm.MYERS;
+
+    /** The largest number of edits searched for in any one region by
+     *  Algorithm.MYERS. */
+    private int _editLimit = Integer.MAX_VALUE;
+
+    /** The result of commonSubsequence() for the current sequences, or
+     *  null if not yet computed. */
+    private int[] _common;
+
+    /** The current sequences, with each distinct item replaced by a
+     *  distinct int. */
+    private int[] _ids1, _ids2;
+
+    /** The furthest reaching forward and backward paths on each diagonal,
+     *  used by middleSnake. */
+    private int[] _forward, _backward;
+
     /** A stack structure used by lls. */
     private int[] _todo;
     /** Structure for the work queue used by lls. */
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Benchmark comparing the algorithms of Diff on synthetic source code.
+ * Each round generates a file of small Java-like methods, full of
+ * braces and blank lines, and a version of it with methods inserted,
+ * deleted and edited. Every algorithm then diffs the pair; the report
+ * gives the time taken, the number of hunks and changed lines in the
+ * edit found, and the size of the resulting Delta. Fewer hunks for the
+ * same changes mean better alignment.
+ * Usage: java gitlet.DiffBenchmark [METHODS [ROUNDS]]
+ * @author Eesha Thaker
+ */
+class DiffBenchmark {
+
+    /** Runs the benchmark with the sizes given in ARGS. */
+    public static void main(String... args) {
+        int methods = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Random random = new Random(61);
+        List<List<String>> bases = new ArrayList<>(), targets = new ArrayList<>();
+        for (int r = 0; r < rounds; r += 1) {
+            List<String> base = source(random, methods);
+            bases.add(base);
+            targets.add(edit(random, base));
+        }
+        System.out.printf("%d rounds of %d lines%n", rounds, bases.get(0).size());
+        System.out.printf("%-10s %10s %8s %10s %12s%n",
+                "algorithm", "ms/round", "hunks", "changed", "delta bytes");
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            if (algorithm == Diff.Algorithm.LCS
+                    && (long) bases.get(0).size() * bases.get(0).size() > 1L << 26) {
+                continue;
+            }
+            long hunks = 0, changed = 0, deltaBytes = 0, nanos = 0;
+            for (int r = 0; r < rounds; r += 1) {
+                long start = System.nanoTime();
+                Diff diff = new Diff();
+                diff.setAlgorithm(algorithm);
+                diff.setSequences(bases.get(r), targets.get(r));
+                int[] edits = diff.diffs();
+                nanos += System.nanoTime() - start;
+                hunks += edits.length / 4;
+                for (int k = 0; k < edits.length; k += 4) {
+                    changed += edits[k + 1] + edits[k + 3];
+                }
+                deltaBytes += Delta.create(bases.get(r), targets.get(r), algorithm).length;
+            }
+            System.out.printf("%-10s %10.1f %8d %10d %12d%n", algorithm,
+                    nanos / 1e6 / rounds, hunks / rounds, changed / rounds,
+                    deltaBytes / rounds);
+        }
+    }
+
+    /** Returns the lines of a file of METHODS small methods. */
+    private static List<String> source(Random random, int methods) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < methods; i += 1) {
+            result.addAll(method(random));
+        }
+        return result;
+    }
+
+    /** Returns the lines of one method with a random body. */
+    private static List<String> method(Random random) {
+        List<String> result = new ArrayList<>();
+        result.add("    int method" + random.nextInt(1 << 20) + "(int x) {\n");
+        for (int k = random.nextInt(4); k >= 0; k -= 1) {
+            result.add("        if (x > " + random.nextInt(100) + ") {\n");
+            result.add("            x = x * " + random.nextInt(10) + ";\n");
+            result.add("        }\n");
+            result.add("\n");
+        }
+        result.add("        return x;\n");
+        result.add("    }\n");
+        result.add("\n");
+        return result;
+    }
+
+    /** Returns a copy of BASE with some methods inserted, some deleted
+     * and some lines changed. */
+    private static List<String> edit(Random random, List<String> base) {
+        List<String> result = new ArrayList<>(base);
+        for (int k = base.size() / 200; k > 0; k -= 1) {
+            int at = methodStart(result, random.nextInt(result.size()));
+            switch (random.nextInt(3)) {
+            case 0:
+                result.addAll(at, method(random));
+                break;
+            case 1:
+                int end = at + 1;
+                while (end < result.size() && !result.get(end).startsWith("    int ")) {
+                    end += 1;
+                }
+                result.subList(at, end).clear();
+                break;
+            default:
+                result.set(Math.min(at + 2, result.size() - 1),
+                        "            x = x - " + random.nextInt(10) + ";\n");
+            }
+        }
+        return result;
+    }
+
+    /** Returns the position of the start of the method containing line
+     * AT of LINES. */
+    private static int methodStart(List<String> lines, int at) {
+        while (at > 0 && !lines.get(at).startsWith("    int ")) {
+            at -= 1;
+        }
+        return at;
+    }
+}
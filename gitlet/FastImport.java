@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Reader of a stream of commits to add to a repository in bulk.
+ * The stream is a sequence of commands, one per line, in the manner
+ * of git fast-import; blank lines are skipped:
+ * <pre>
+ * commit BRANCH
+ * mark :N                optional; names the commit :N in later commands
+ * time SECONDS           optional; seconds since the epoch, default now
+ * data LENGTH            followed by LENGTH bytes of commit message
+ * from :N | COMMIT-ID    optional; first parent, default the branch tip
+ * merge :N | COMMIT-ID   optional; second parent
+ * M FILE-NAME            a file added or changed, followed by
+ * data LENGTH            LENGTH bytes of its contents
+ * D FILE-NAME            a file removed
+ * </pre>
+ * A commit starts with the files of its first parent, and its tree is
+ * that of the parent with only the directories holding changed files
+ * rebuilt (see TreeStore). Rather than writing each blob and tree to a
+ * file of its own, they are gathered in memory and written to the
+ * object store a pack at a time, every PACK_BUFFER bytes, with
+ * successive versions of a file or directory stored as deltas. Commits
+ * are only collected, so the caller can store them all at once and
+ * update branches and indexes once at the end. Nothing refers to the
+ * objects of an import that fails part way through.
+ * @author Eesha Thaker
+ */
+class FastImport {
+
+    /** Number of bytes of blob contents gathered before they are
+     * written as a pack. */
+    static final int PACK_BUFFER = 1 << 26;
+
+    /** Where blobs are written. */
+    private final ObjectStore objectStore;
+
+    /** Where existing commits are looked up. */
+    private final CommitStore commitStore;
+
+    /** Branch names mapped to their head commits, moved as commits are
+     * read. */
+    private final Map<String, Commit> branches;
+
+    /** Commits read so far, in order. */
+    private final List<Commit> commits = new ArrayList<>();
+
+    /** Commits read so far, by hash. */
+    private final Map<String, Commit> byId = new HashMap<>();
+
+    /** Commits with marks, by mark. */
+    private final Map<String, Commit> marks = new HashMap<>();
+
+    /** Number of file versions read. */
+    private int blobs;
+
+    /** Hashes of the file versions read. */
+    private final Set<String> blobHashes = new HashSet<>();
+
+    /** Where the trees of the commits read are built. */
+    private final TreeStore trees;
+
+    /** How versions of a file are compared when packed. */
+    private final Diff.Algorithm algorithm;
+
+    /** Contents of the blobs and trees not yet written, by hash. */
+    private final Map<String, byte[]> pending = new HashMap<>();
+
+    /** Hashes of the blobs and trees not yet written, by the name of
+     * their file or directory, in the order read. */
+    private final Map<String, List<String>> histories = new LinkedHashMap<>();
+
+    /** Total size of the blobs and trees not yet written. */
+    private long pendingBytes;
+
+    /** The stream being read. */
+    private InputStream in;
+
+    /** Number of the line being read, for error messages. */
+    private int lineNumber;
+
+    /** An import writing blobs to OBJECTSTORE, packed using ALGORITHM,
+     * whose commits may have parents in COMMITSTORE, and which moves the
+     * heads in BRANCHES. */
+    FastImport(ObjectStore objectStore, CommitStore commitStore,
+               Map<String, Commit> branches, Diff.Algorithm algorithm) {
+        this.objectStore = objectStore;
+        this.commitStore = commitStore;
+        this.branches = branches;
+        this.algorithm = algorithm;
+        this.trees = new TreeStore(this::object, this::addObject);
+    }
+
+    /** Reads all commits from INPUT, writing their blobs, and returns
+     * them in the order read, each after its parents. Throws a
+     * GitletException if INPUT is malformed. */
+    List<Commit> read(InputStream input) throws IOException {
+        in = new BufferedInputStream(input, Utils.CHUNK_SIZE);
+        String line = readLine();
+        while (line != null) {
+            if (line.isEmpty()) {
+                line = readLine();
+            } else if (line.startsWith("commit ")) {
+                line = readCommit(line.substring("commit ".length()));
+            } else {
+                throw error("unknown command '%s'", line);
+            }
+        }
+        writePending();
+        return commits;
+    }
+
+    /** Returns the number of file versions read. */
+    int blobs() {
+        return blobs;
+    }
+
+    /** Returns the hashes of the file versions read, the only blobs
+     * the commits read add to those of their parents. */
+    Set<String> blobHashes() {
+        return blobHashes;
+    }
+
+    /** Reads the rest of a commit on BRANCH, and returns the line after
+     * it, or null at the end of the input. */
+    private String readCommit(String branch) throws IOException {
+        String mark = null;
+        Date time = null;
+        String message = null;
+        Commit parent1 = branches.get(branch), parent2 = null;
+        TreeMap<String, String> changes = new TreeMap<>();
+        String line = readLine();
+        for (; line != null && !line.startsWith("commit "); line = readLine()) {
+            if (line.isEmpty()) {
+                continue;
+            } else if (line.startsWith("mark ")) {
+                mark = line.substring("mark ".length());
+            } else if (line.startsWith("time ")) {
+                time = new Date(1000 * parseNumber(line.substring("time ".length())));
+            } else if (line.startsWith("data ")) {
+                message = new String(readData(line), StandardCharsets.UTF_8);
+            } else if (line.startsWith("from ")) {
+                parent1 = commit(line.substring("from ".length()));
+            } else if (line.startsWith("merge ")) {
+                parent2 = commit(line.substring("merge ".length()));
+            } else if (line.startsWith("M ") || line.startsWith("D ")) {
+                String name = line.substring(2);
+                if (line.startsWith("D ")) {
+                    changes.put(name, null);
+                } else {
+                    byte[] contents = readData(readLine());
+                    String hash = Utils.sha1(contents, name);
+                    addObject(name, hash, contents);
+                    changes.put(name, hash);
+                    blobHashes.add(hash);
+                    blobs += 1;
+                }
+            } else {
+                throw error("unknown commit command '%s'", line);
+            }
+        }
+        if (message == null) {
+            throw error("commit on %s has no message", branch);
+        }
+        Commit commit = new Commit(message, time == null ? new Date() : time,
+                parent1 == null ? null : parent1.getCurrID(),
+                parent2 == null ? null : parent2.getCurrID());
+        String base = parent1 == null ? null : treeOf(parent1);
+        commit.setTree(changes.isEmpty() && base != null
+                ? base : trees.update(base, changes));
+        commit.readFilesFrom(trees);
+        commit.setCurrID();
+        commit.setName(branch);
+        commits.add(commit);
+        byId.put(commit.getCurrID(), commit);
+        if (mark != null) {
+            marks.put(mark, commit);
+        }
+        branches.put(branch, commit);
+        return line;
+    }
+
+    /** Returns the tree of COMMIT, first writing one for a commit made
+     * before trees. */
+    private String treeOf(Commit commit) {
+        if (commit.getTree() == null) {
+            commit.setTree(trees.write(commit.getBlobReferences()));
+        }
+        return commit.getTree();
+    }
+
+    /** Adds CONTENTS, the version of file or directory NAME with HASH,
+     * to the objects to be written, writing them if there are enough.
+     * Objects too large to pack are written at once. */
+    private void addObject(String name, String hash, byte[] contents) {
+        if (contents.length > ObjectStore.MAX_PACKED_SIZE) {
+            objectStore.put(hash, contents);
+        } else if (!pending.containsKey(hash)) {
+            pending.put(hash, contents);
+            histories.computeIfAbsent(name, k -> new ArrayList<>()).add(hash);
+            pendingBytes += contents.length;
+            if (pendingBytes >= PACK_BUFFER) {
+                writePending();
+            }
+        }
+    }
+
+    /** Returns the contents of the object with HASH, which may not have
+     * been written yet. */
+    private byte[] object(String hash) {
+        byte[] result = pending.get(hash);
+        return result == null ? objectStore.get(hash) : result;
+    }
+
+    /** Writes the blobs and trees gathered so far as a pack. */
+    private void writePending() {
+        objectStore.putPack(histories.values(), pending, algorithm);
+        pending.clear();
+        histories.clear();
+        pendingBytes = 0;
+    }
+
+    /** Returns the commit named by REF, a mark or a commit hash, which
+     * has been read already or is in the commit store. */
+    private Commit commit(String ref) {
+        Commit result = ref.startsWith(":") ? marks.get(ref) : byId.get(ref);
+        if (result == null && !ref.startsWith(":")) {
+            result = commitStore.get(ref);
+        }
+        if (result == null) {
+            throw error("no commit %s", ref);
+        }
+        return result;
+    }
+
+    /** Returns the bytes of the data block introduced by HEADER, a line
+     * of the form "data LENGTH". A newline after the data is skipped. */
+    private byte[] readData(String header) throws IOException {
+        if (header == null || !header.startsWith("data ")) {
+            throw error("expected data, found '%s'", header);
+        }
+        long length = parseNumber(header.substring("data ".length()));
+        byte[] result = in.readNBytes((int) length);
+        if (result.length != length) {
+            throw error("data ends early");
+        }
+        lineNumber += count(result, (byte) '\n');
+        in.mark(1);
+        if (in.read() != '\n') {
+            in.reset();
+        } else {
+            lineNumber += 1;
+        }
+        return result;
+    }
+
+    /** Returns the next line of the input without its newline, or null
+     * at the end of the input. */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        while (c != -1 && c != '\n') {
+            line.write(c);
+            c = in.read();
+        }
+        lineNumber += 1;
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the non-negative number NUMERAL. */
+    private long parseNumber(String numeral) {
+        try {
+            long result = Long.parseLong(numeral.trim());
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            //reported below
+        }
+        throw error("bad number '%s'", numeral);
+    }
+
+    /** Returns the number of occurrences of B in DATA. */
+    private static int count(byte[] data, byte b) {
+        int result = 0;
+        for (byte x : data) {
+            if (x == b) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns an exception reporting MSG, formatted with ARGS, at the
+     * current line. */
+    private GitletException error(String msg, Object... args) {
+        return Utils.error("Bad import stream at line %d: %s", lineNumber,
+                String.format(msg, args));
+    }
+}
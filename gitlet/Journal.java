@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** Write-ahead journal through which the state files of a repository
+ * (HEAD, branches and staging area) change together.
+ * The new contents of the files a command changed are first written to
+ * a temporary file, which is synced to disk, the only sync needed, and
+ * then renamed over the journal; the rename is atomic, so the journal
+ * always holds either the previous transaction or this one, complete.
+ * Only then are the state files themselves written, without syncing.
+ * A crash at any point leaves either a temporary file, which is
+ * discarded, or a journal whose files recover() writes again where
+ * they differ. Each transaction carries forward the files of the one
+ * before, so the journal always holds the latest contents of every
+ * state file written through it, and replaying it never goes back.
+ * The journal ends in a CRC-32 checksum of the rest.
+ * @author Eesha Thaker
+ */
+class Journal {
+
+    /** Magic number at the start of the journal. */
+    private static final byte[] MAGIC = {'G', 'J', 'N', 'L'};
+
+    /** Version of the journal format. */
+    private static final int VERSION = 1;
+
+    /** Directory holding the state files. */
+    private final File dir;
+
+    /** The journal of the last transaction committed. */
+    private final File journalFile;
+
+    /** The journal of a transaction being committed. */
+    private final File tempFile;
+
+    /** A journal of the state files in the gitlet directory GITLETDIR. */
+    Journal(File gitletDir) {
+        this.dir = gitletDir;
+        this.journalFile = Utils.join(gitletDir, "journal");
+        this.tempFile = Utils.join(gitletDir, "journal.tmp");
+    }
+
+    /** Writes FILES, the new contents of state files in the gitlet
+     * directory, keyed by file, as one transaction: all of them are
+     * written, or after a crash either all or none are. */
+    void commit(Map<File, byte[]> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> entries = read();
+        for (Map.Entry<File, byte[]> file : files.entrySet()) {
+            entries.put(file.getKey().getName(), file.getValue());
+        }
+        try (FileChannel out = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer contents = ByteBuffer.wrap(encode(entries));
+            while (contents.hasRemaining()) {
+                out.write(contents);
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tempFile.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tempFile.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (Map.Entry<File, byte[]> file : files.entrySet()) {
+            Utils.writeContents(file.getKey(), file.getValue());
+        }
+    }
+
+    /** Discards a transaction left incomplete by a crash, and writes
+     * each file of the last committed transaction whose contents on
+     * disk differ from those in the journal. Returns the number of
+     * files written. */
+    int recover() {
+        tempFile.delete();
+        int result = 0;
+        for (Map.Entry<String, byte[]> entry : read().entrySet()) {
+            File file = Utils.join(dir, entry.getKey());
+            if (!file.isFile()
+                    || !Arrays.equals(Utils.readContents(file), entry.getValue())) {
+                Utils.writeContents(file, entry.getValue());
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the files of the last committed transaction, by name, or
+     * none if there is no journal or it is damaged. */
+    private Map<String, byte[]> read() {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        if (!journalFile.isFile()) {
+            return result;
+        }
+        byte[] contents = Utils.readContents(journalFile);
+        try {
+            ByteBuffer in = ByteBuffer.wrap(contents);
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.getInt() != VERSION
+                    || in.getLong(contents.length - 8) != checksum(contents, contents.length - 8)) {
+                return result;
+            }
+            for (int n = in.getInt(); n > 0; n -= 1) {
+                byte[] name = new byte[in.getShort() & 0xffff];
+                in.get(name);
+                byte[] data = new byte[in.getInt()];
+                in.get(data);
+                result.put(new String(name, StandardCharsets.UTF_8), data);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /** Returns the journal holding ENTRIES, file contents by name. */
+    private static byte[] encode(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+        out.writeLong(checksum(bytes.toByteArray(), bytes.size()));
+        return bytes.toByteArray();
+    }
+
+    /** Returns the CRC-32 checksum of the first LENGTH bytes of DATA. */
+    private static long checksum(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+}
@@ -1,7 +1,20 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
@@ -12,9 +25,130 @@ import java.util.*;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....
+     *  "daemon" starts a Daemon serving the repository; while one is
+     *  running, commands are forwarded to it. "batch [FILE]" runs the
+     *  commands in FILE, or in the standard input, as a Batch.
+     *  "find --words QUERY" and "find --prefix QUERY" find commits by the
+     *  words of their messages rather than the whole message.
+     *  "log" takes the options "--max-count=N" (or "-n N"),
+     *  "--since=TIME" and "--until=TIME"; see parseTime for TIMEs. */
     public static void main(String... args) throws IOException, ParseException {
+        File gitletDir = new File(System.getProperty("user.dir"), ".gitlet");
+        if (args.length == 1 && args[0].equals("daemon")) {
+            new Daemon(gitletDir).serve();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            batch(gitletDir, args);
+            return;
+        }
+        if (args.length == 1 && args[0].equals("fast-import")
+                && Daemon.running(gitletDir)) {
+            System.out.println("Give fast-import a file while a Gitlet daemon is running.");
+            return;
+        }
+        if (Daemon.forward(args, gitletDir, System.out)) {
+            return;
+        }
         Repo r = new Repo();
+        run(r, args);
+        r.flush();
+    }
+
+    /** Runs the commands in the file named by ARGS[1], or in the
+     * standard input if there is none, in the repository whose gitlet
+     * directory is GITLETDIR. */
+    private static void batch(File gitletDir, String... args) throws IOException {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Batch.Session session = Daemon.running(gitletDir)
+                ? Batch.remote(gitletDir) : Batch.local(new Repo());
+        try (BufferedReader script = args.length == 2
+                ? new BufferedReader(new FileReader(args[1]))
+                : new BufferedReader(new InputStreamReader(System.in))) {
+            new Batch(session, System.err).run(script);
+        }
+    }
+
+    /** Runs the log command given by ARGS, with its options, on R. */
+    private static void log(Repo r, String... args) throws ParseException {
+        int maxCount = Integer.MAX_VALUE;
+        Instant since = null, until = null;
+        try {
+            for (int i = 1; i < args.length; i += 1) {
+                String arg = args[i];
+                if (arg.equals("-n") && i + 1 < args.length) {
+                    i += 1;
+                    maxCount = Integer.parseInt(args[i]);
+                } else if (arg.startsWith("--max-count=")) {
+                    maxCount = Integer.parseInt(arg.substring("--max-count=".length()));
+                } else if (arg.startsWith("--since=")) {
+                    since = parseTime(arg.substring("--since=".length()));
+                } else if (arg.startsWith("--until=")) {
+                    until = parseTime(arg.substring("--until=".length()));
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        r.log(maxCount, since, until);
+    }
+
+    /** Returns the time named by WHEN, which is "now", "yesterday",
+     * "N UNITS ago" (UNITS being seconds, minutes, hours, days or weeks,
+     * with dots or spaces between the words), "@SECONDS" since the
+     * epoch, or an ISO-8601 date, local date-time or date-time with
+     * offset, such as 2020-09-13, 2020-09-13T12:26:40 or
+     * 2020-09-13T12:26:40Z. Local times are in the local time zone. */
+    static Instant parseTime(String when) {
+        String text = when.trim().toLowerCase();
+        Instant now = Instant.now();
+        if (text.equals("now")) {
+            return now;
+        } else if (text.equals("yesterday")) {
+            return now.minus(1, ChronoUnit.DAYS);
+        } else if (text.startsWith("@")) {
+            return Instant.ofEpochSecond(Long.parseLong(text.substring(1)));
+        }
+        String[] words = text.split("[.\\s]+");
+        if (words.length == 3 && words[2].equals("ago")) {
+            long n = Long.parseLong(words[0]);
+            String unit = words[1].endsWith("s") ? words[1] : words[1] + "s";
+            switch (unit) {
+                case "seconds":
+                    return now.minus(n, ChronoUnit.SECONDS);
+                case "minutes":
+                    return now.minus(n, ChronoUnit.MINUTES);
+                case "hours":
+                    return now.minus(n, ChronoUnit.HOURS);
+                case "days":
+                    return now.minus(n, ChronoUnit.DAYS);
+                case "weeks":
+                    return now.minus(7 * n, ChronoUnit.DAYS);
+                default:
+                    throw new IllegalArgumentException(when);
+            }
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        String iso = when.trim();
+        if (!iso.contains("T")) {
+            return LocalDate.parse(iso).atStartOfDay(zone).toInstant();
+        }
+        try {
+            return OffsetDateTime.parse(iso).toInstant();
+        } catch (DateTimeParseException excp) {
+            return LocalDateTime.parse(iso).atZone(zone).toInstant();
+        }
+    }
+
+    /** Runs the command given by ARGS on R. */
+    static void run(Repo r, String... args) throws IOException, ParseException {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
@@ -43,7 +177,7 @@ public class Main {
                     break;
                 }
             case "log":
-                r.log();
+                log(r, args);
                 break;
             case "status":
                 r.status();
@@ -52,7 +186,12 @@ public class Main {
                 r.rm(args[1]);
                 break;
             case "find":
-                r.find(args[1]);
+                if (args.length == 3
+                        && (args[1].equals("--words") || args[1].equals("--prefix"))) {
+                    r.findWords(args[2], args[1].equals("--prefix"));
+                } else {
+                    r.find(args[1]);
+                }
                 break;
             case "global-log":
                 r.globalLog();
@@ -76,6 +215,29 @@ public class Main {
             case "merge":
                 r.merge(args[1]);
                 break;
+            case "config":
+                r.config(args[1], args.length > 2 ? args[2] : null);
+                break;
+            case "compress":
+                r.compress();
+                break;
+            case "pack":
+                r.pack();
+                break;
+            case "fast-import":
+                if (args.length == 1) {
+                    r.fastImport(System.in);
+                } else if (!new File(args[1]).isFile()) {
+                    System.out.println("File does not exist.");
+                } else {
+                    try (InputStream in = new FileInputStream(args[1])) {
+                        r.fastImport(in);
+                    }
+                }
+                break;
+            case "daemon":
+                System.out.println("No Gitlet daemon is running.");
+                break;
             default:
                 System.out.println("No command with that name exists.");
         }
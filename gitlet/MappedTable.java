@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** Open-addressing hash table of raw 20-byte hashes with linear
+ * probing, memory-mapped and updated in place, on which BlobSet and
+ * MessageIndex are built. Each slot holds a hash, all zero in an empty
+ * slot, followed by a fixed number of bytes of value. The file starts
+ * with a header: magic number, version, capacity (a power of two),
+ * number of hashes, and then fields kept for the table's user. The
+ * table doubles whenever it becomes half full; the bigger table is
+ * written beside the file and renamed over it.
+ * @author Eesha Thaker
+ */
+class MappedTable {
+
+    /** Length of a hash in bytes. */
+    static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+
+    /** File holding the table. */
+    private final File file;
+
+    /** Magic number at the start of the file. */
+    private final byte[] magic;
+
+    /** Version of the file format. */
+    private final int version;
+
+    /** Position in the header of the capacity. */
+    private final int capacityPos;
+
+    /** Position in the header of the number of hashes. */
+    private final int sizePos;
+
+    /** Position in the header of the fields of the table's user. */
+    private final int fieldsPos;
+
+    /** Size of the header. */
+    private final int headerSize;
+
+    /** Size of a slot: hash and value. */
+    private final int slotSize;
+
+    /** The mapped table, or null if it has not been opened yet. */
+    private MappedByteBuffer table;
+
+    /** A table kept in FILE, starting with MAGIC and VERSION, whose
+     * header has FIELDSSIZE bytes of fields for its user, and whose
+     * slots hold VALUESIZE bytes after each hash. */
+    MappedTable(File file, byte[] magic, int version, int fieldsSize, int valueSize) {
+        this.file = file;
+        this.magic = magic;
+        this.version = version;
+        this.capacityPos = magic.length + 4;
+        this.sizePos = capacityPos + 4;
+        this.fieldsPos = sizePos + 4;
+        this.headerSize = fieldsPos + fieldsSize;
+        this.slotSize = HASH_SIZE + valueSize;
+    }
+
+    /** Maps the table, if that has not been done yet. Returns false,
+     * leaving it unmapped, if the file is missing or does not hold a
+     * table of this kind. */
+    boolean open() {
+        if (table != null) {
+            return true;
+        }
+        if (!file.isFile() || file.length() < headerSize) {
+            return false;
+        }
+        MappedByteBuffer mapped = map(file, file.length());
+        byte[] found = new byte[magic.length];
+        mapped.get(0, found);
+        if (Arrays.equals(found, magic) && mapped.getInt(magic.length) == version
+                && file.length() == headerSize
+                   + (long) mapped.getInt(capacityPos) * slotSize) {
+            table = mapped;
+            return true;
+        }
+        return false;
+    }
+
+    /** Replaces the file with an empty table of CAPACITY slots, a power
+     * of two, whose fields are all zero, and maps it. */
+    void create(int capacity) {
+        file.delete();
+        table = map(file, headerSize + (long) capacity * slotSize);
+        table.put(0, magic);
+        table.putInt(magic.length, version);
+        table.putInt(capacityPos, capacity);
+    }
+
+    /** Returns the position of the slot holding KEY, or -1 if there is
+     * none. */
+    int find(byte[] key) {
+        int pos = slot(table, key);
+        return isEmpty(table, pos) ? -1 : pos;
+    }
+
+    /** Returns the position of the slot holding KEY, adding KEY with a
+     * value of zero if it is new, and first growing the table if it is
+     * half full. */
+    int add(byte[] key) {
+        int pos = slot(table, key);
+        if (!isEmpty(table, pos)) {
+            return pos;
+        }
+        int size = table.getInt(sizePos);
+        if ((size + 1) * 2 > table.getInt(capacityPos)) {
+            grow();
+            pos = slot(table, key);
+        }
+        table.put(pos, key);
+        table.putInt(sizePos, size + 1);
+        return pos;
+    }
+
+    /** Returns the value, a long, of the slot at POS. */
+    long value(int pos) {
+        return table.getLong(pos + HASH_SIZE);
+    }
+
+    /** Sets the value of the slot at POS to VALUE, a long. */
+    void setValue(int pos, long value) {
+        table.putLong(pos + HASH_SIZE, value);
+    }
+
+    /** Returns the int at FIELD, an offset into the fields of the
+     * header. */
+    int getInt(int field) {
+        return table.getInt(fieldsPos + field);
+    }
+
+    /** Sets the int at FIELD, an offset into the fields of the header,
+     * to VALUE. */
+    void putInt(int field, int value) {
+        table.putInt(fieldsPos + field, value);
+    }
+
+    /** Returns the long at FIELD, an offset into the fields of the
+     * header. */
+    long getLong(int field) {
+        return table.getLong(fieldsPos + field);
+    }
+
+    /** Sets the long at FIELD, an offset into the fields of the header,
+     * to VALUE. */
+    void putLong(int field, long value) {
+        table.putLong(fieldsPos + field, value);
+    }
+
+    /** Returns the position of the slot of TABLE holding KEY, or of the
+     * empty slot where KEY would go. */
+    private int slot(MappedByteBuffer table, byte[] key) {
+        int mask = table.getInt(capacityPos) - 1;
+        int i = ((key[0] & 0xff) << 24 | (key[1] & 0xff) << 16
+                 | (key[2] & 0xff) << 8 | (key[3] & 0xff)) & mask;
+        byte[] found = new byte[HASH_SIZE];
+        while (true) {
+            int pos = headerSize + i * slotSize;
+            table.get(pos, found);
+            if (Arrays.equals(found, key) || isEmpty(found)) {
+                return pos;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Returns true iff the slot of TABLE at POS is empty. */
+    private static boolean isEmpty(MappedByteBuffer table, int pos) {
+        byte[] found = new byte[HASH_SIZE];
+        table.get(pos, found);
+        return isEmpty(found);
+    }
+
+    /** Returns true iff every byte of HASH is zero. */
+    private static boolean isEmpty(byte[] hash) {
+        for (byte b : hash) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Replaces the table with one of twice the capacity holding the
+     * same hashes, values and fields. */
+    private void grow() {
+        int capacity = table.getInt(capacityPos);
+        File temp = new File(file.getPath() + ".tmp");
+        temp.delete();
+        MappedByteBuffer bigger = map(temp, headerSize + 2L * capacity * slotSize);
+        bigger.put(0, table, 0, headerSize);
+        bigger.putInt(capacityPos, capacity * 2);
+        byte[] key = new byte[HASH_SIZE];
+        byte[] slot = new byte[slotSize];
+        for (int i = 0; i < capacity; i += 1) {
+            int pos = headerSize + i * slotSize;
+            table.get(pos, key);
+            if (!isEmpty(key)) {
+                table.get(pos, slot);
+                bigger.put(slot(bigger, key), slot);
+            }
+        }
+        bigger.force();
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        table = bigger;
+    }
+
+    /** Returns the first LENGTH bytes of FILE mapped read-write,
+     * extending the file with zeros if it is shorter. */
+    private static MappedByteBuffer map(File file, long length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
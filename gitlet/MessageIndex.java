@@ -0,0 +1,270 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/** On-disk inverted index from commit messages to the commits that
+ * have them. The terms of a commit are its whole message and each of
+ * the words in it, lower-cased, where a word is a run of letters and
+ * digits. Each term has a list of the commits with that term, kept in
+ * the postings file as a chain of fixed-size entries (raw commit hash
+ * and offset of the next entry, newest first), and the index itself is
+ * a MappedTable, as in BlobSet, mapping the SHA-1 hash of each term to
+ * the offset of its newest entry. Finding the commits with a term
+ * therefore probes a slot or two and reads one entry per commit found,
+ * never the commits. Every word is also listed once in the terms file,
+ * so that words can be searched by prefix.
+ * The header records how many commits of the CommitStore the index
+ * covers and the length of the postings file; commits added since are
+ * folded in by update(). Entries are written before the table points
+ * at them, so an interrupted update leaves a postings file longer
+ * than recorded, and the index is then rebuilt from scratch.
+ * @author Eesha Thaker
+ */
+class MessageIndex {
+
+    /** Magic number at the start of the table file. */
+    private static final byte[] MAGIC = {'G', 'M', 'S', 'G'};
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Field of the header holding the number of commits covered. */
+    private static final int COMMITS = 0;
+
+    /** Field of the header holding the length of the postings file. */
+    private static final int POSTINGS = 4;
+
+    /** Length of a hash in bytes. */
+    private static final int HASH_SIZE = MappedTable.HASH_SIZE;
+
+    /** Size of an entry of the postings file: commit hash and offset of
+     * the next entry. */
+    private static final int ENTRY_SIZE = HASH_SIZE + 8;
+
+    /** Offset marking the end of a chain of entries. */
+    private static final long NONE = -1;
+
+    /** Prefix of the hashed form of a whole message. */
+    private static final String MESSAGE = "message\n";
+
+    /** Prefix of the hashed form of a word. */
+    private static final String WORD = "word\n";
+
+    /** Number of slots in a new table; always a power of two. */
+    static final int INITIAL_CAPACITY = 1 << 10;
+
+    /** File holding the chains of commits of each term. */
+    private final File postingsFile;
+
+    /** File listing every word indexed, one per line. */
+    private final File termsFile;
+
+    /** The table from the hash of each term to its newest entry. */
+    private final MappedTable table;
+
+    /** A message index kept in the gitlet directory GITLETDIR. */
+    MessageIndex(File gitletDir) {
+        this.table = new MappedTable(Utils.join(gitletDir, "messageIndex"),
+                MAGIC, VERSION, 4 + 8, 8);
+        this.postingsFile = Utils.join(gitletDir, "messagePostings");
+        this.termsFile = Utils.join(gitletDir, "messageTerms");
+    }
+
+    /** Returns the hashes of the commits whose message is MESSAGE,
+     * oldest first. */
+    List<String> find(String message) {
+        open();
+        return commits(MESSAGE, message);
+    }
+
+    /** Returns the hashes of the commits whose messages contain every
+     * word of QUERY, or, if PREFIX, a word starting with each word of
+     * QUERY. Case is ignored. The commits with the first word of QUERY
+     * come oldest first. */
+    Set<String> search(String query, boolean prefix) {
+        open();
+        Set<String> result = null;
+        for (String word : words(query)) {
+            Set<String> matches = new LinkedHashSet<>();
+            for (String term : prefix ? wordsStartingWith(word) : List.of(word)) {
+                matches.addAll(commits(WORD, term));
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+        }
+        return result == null ? Set.of() : result;
+    }
+
+    /** Adds the terms of every commit in STORE that this index does not
+     * cover yet. */
+    void update(CommitStore store) {
+        update(store, store::get);
+    }
+
+    /** Adds the terms of every commit in STORE that this index does not
+     * cover yet, as update(STORE) does, getting each commit from its
+     * hash through COMMITS, which may have them in memory already. */
+    void update(CommitStore store, Function<String, Commit> commits) {
+        open();
+        int covered = table.getInt(COMMITS);
+        if (covered > store.size()) {
+            create();
+            covered = 0;
+        }
+        if (covered == store.size()) {
+            return;
+        }
+        Iterator<String> ids = store.ids().iterator();
+        for (int i = 0; i < covered; i += 1) {
+            ids.next();
+        }
+        long end = table.getLong(POSTINGS);
+        Map<String, Long> heads = new HashMap<>();
+        StringBuilder newWords = new StringBuilder();
+        try (DataOutputStream entries = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(postingsFile, true),
+                                         Utils.CHUNK_SIZE))) {
+            while (ids.hasNext()) {
+                String id = ids.next();
+                String message = commits.apply(id).getCommitMessage();
+                List<String> terms = new ArrayList<>();
+                terms.add(MESSAGE + message);
+                for (String word : new LinkedHashSet<>(words(message))) {
+                    terms.add(WORD + word);
+                }
+                for (String term : terms) {
+                    Long head = heads.get(term);
+                    if (head == null) {
+                        int pos = table.find(Utils.fromHex(Utils.sha1(term)));
+                        if (pos < 0) {
+                            head = NONE;
+                            if (term.startsWith(WORD)) {
+                                newWords.append(term, WORD.length(), term.length())
+                                        .append('\n');
+                            }
+                        } else {
+                            head = table.value(pos);
+                        }
+                    }
+                    entries.write(Utils.fromHex(id));
+                    entries.writeLong(head);
+                    heads.put(term, end);
+                    end += ENTRY_SIZE;
+                }
+                covered += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (FileOutputStream out = new FileOutputStream(termsFile, true)) {
+            out.write(newWords.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (Map.Entry<String, Long> head : heads.entrySet()) {
+            int pos = table.add(Utils.fromHex(Utils.sha1(head.getKey())));
+            table.setValue(pos, head.getValue());
+        }
+        table.putLong(POSTINGS, end);
+        table.putInt(COMMITS, covered);
+    }
+
+    /** Returns the lower-cased words of TEXT. */
+    static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean inWord = i < text.length()
+                    && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the hashes of the commits with the term made of KIND
+     * followed by TEXT, oldest first. Entries are read from the postings
+     * file by their long offsets, so the file may exceed 2 GiB. */
+    private List<String> commits(String kind, String text) {
+        List<String> result = new ArrayList<>();
+        int pos = table.find(Utils.fromHex(Utils.sha1(kind, text)));
+        if (pos < 0) {
+            return result;
+        }
+        try (FileChannel postings = FileChannel.open(postingsFile.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            byte[] hash = new byte[HASH_SIZE];
+            for (long offset = table.value(pos); offset != NONE;
+                 offset = entry.getLong(HASH_SIZE)) {
+                entry.clear();
+                while (entry.hasRemaining()) {
+                    if (postings.read(entry, offset + entry.position()) < 0) {
+                        throw new IllegalArgumentException("truncated message index");
+                    }
+                }
+                entry.get(0, hash);
+                result.add(Utils.toHex(hash));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Returns the indexed words that start with PREFIX. */
+    private List<String> wordsStartingWith(String prefix) {
+        List<String> result = new ArrayList<>();
+        if (!termsFile.isFile()) {
+            return result;
+        }
+        for (String word : Utils.readContentsAsString(termsFile).split("\n")) {
+            if (!word.isEmpty() && word.startsWith(prefix)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Maps the table, starting an empty index that covers no commits
+     * if the table is missing or unreadable, or does not match the
+     * postings file. */
+    private void open() {
+        if (!table.open() || postingsFile.length() != table.getLong(POSTINGS)) {
+            create();
+        }
+    }
+
+    /** Deletes the index and starts an empty one. */
+    private void create() {
+        postingsFile.delete();
+        termsFile.delete();
+        table.create(INITIAL_CAPACITY);
+    }
+}
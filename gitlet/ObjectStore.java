@@ -0,0 +1,397 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/** Content-addressed store of blob contents.
+ * Each object is kept in a file named by its hash, inside a
+ * subdirectory named by the first two hex digits of that hash
+ * (objects/ab/cdef...), so no directory grows past a manageable size
+ * and checking whether an object exists is a single file probe.
+ * Objects written by older versions of gitlet into the flat
+ * committedBlobs directory are still found there, and are always raw,
+ * without a header.
+ * Objects may be stored raw or deflate-compressed; either way each
+ * starts with a header giving its format (see Compression), and reads
+ * decompress transparently. The pack command moves
+ * loose objects into a single pack (see PackFile), from which they are
+ * read just as transparently. Bulk imports write their objects straight
+ * into packs of their own, which the next pack command merges.
+ * @author Eesha Thaker
+ */
+class ObjectStore {
+
+    /** Number of hex digits in the name of a fan-out directory. */
+    private static final int FANOUT_DIGITS = 2;
+
+    /** Objects larger than this many bytes are left loose when packing,
+     * so that reading them never needs them whole in memory. */
+    static final long MAX_PACKED_SIZE = 1 << 24;
+
+    /** Root directory of the object store. */
+    private final File objectsDir;
+
+    /** Legacy flat directory of committed blobs. */
+    private final File legacyDir;
+
+    /** True iff new objects are written compressed. */
+    private boolean compressed;
+
+    /** Directory holding the packs of this store. */
+    private final File packDir;
+
+    /** File holding the pack written by pack(). */
+    private final File packFile;
+
+    /** The packs of this store, or null if they have not been read yet. */
+    private List<PackFile> packs;
+
+    /** An object store kept in the gitlet directory GITLETDIR. */
+    ObjectStore(File gitletDir) {
+        this.objectsDir = Utils.join(gitletDir, "objects");
+        this.legacyDir = Utils.join(gitletDir, "committedBlobs");
+        this.packDir = Utils.join(objectsDir, "pack");
+        this.packFile = Utils.join(packDir, "objects.pack");
+    }
+
+    /** Creates the root directory of the store. */
+    void init() {
+        objectsDir.mkdir();
+    }
+
+    /** Sets whether new objects are written compressed to COMPRESSED. */
+    void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /** Returns true iff an object with the given HASH is stored. */
+    boolean contains(String hash) {
+        return path(hash).isFile() || legacyPath(hash).isFile()
+                || packWith(hash) != null;
+    }
+
+    /** Stores CONTENTS under the given HASH, unless an object with
+     * that hash is already stored. */
+    void put(String hash, byte[] contents) {
+        if (contains(hash)) {
+            return;
+        }
+        File file = path(hash);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, compressed ? Compression.compress(contents)
+                : Compression.store(contents));
+    }
+
+    /** Stores the contents of SOURCE under the given HASH, unless an
+     * object with that hash is already stored. The contents are streamed
+     * into a temporary file that is renamed into place once complete, so
+     * a partially copied object is never visible under its hash. */
+    void putFile(String hash, File source) {
+        if (contains(hash)) {
+            return;
+        }
+        File file = path(hash);
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        if (compressed) {
+            Compression.compress(source, temp);
+        } else {
+            Compression.store(source, temp);
+        }
+        replace(temp, file);
+    }
+
+    /** Writes the contents of the object with the given HASH to DEST.
+     * Loose objects are streamed rather than read into memory. Throws
+     * IllegalArgumentException if there is no such object. */
+    void copyTo(String hash, File dest) {
+        File file = find(hash);
+        if (file == null) {
+            Utils.writeContents(dest, (Object) packWith(hash).get(hash));
+        } else if (isLegacy(file)) {
+            Utils.copyContents(file, dest);
+        } else {
+            Compression.copyContents(file, dest);
+        }
+    }
+
+    /** Returns the contents of the object with the given HASH.
+     * Throws IllegalArgumentException if there is no such object. */
+    byte[] get(String hash) {
+        File file = find(hash);
+        if (file == null) {
+            return packWith(hash).get(hash);
+        } else if (isLegacy(file)) {
+            return Utils.readContents(file);
+        }
+        return Compression.decompress(Utils.readContents(file));
+    }
+
+    /** Moves all loose objects no larger than MAX_PACKED_SIZE, together
+     * with the contents of all packs, into a single new pack. HISTORIES
+     * lists, for each file name, the hashes of its successive versions,
+     * oldest first; versions of the same file are delta-compressed
+     * against each other, comparing them with ALGORITHM. Returns a
+     * summary of the result. */
+    PackSummary pack(Collection<? extends Collection<String>> histories,
+                     Diff.Algorithm algorithm) {
+        LinkedHashSet<String> toPack = new LinkedHashSet<>();
+        long before = 0;
+        for (File object : looseObjects()) {
+            if (object.length() <= MAX_PACKED_SIZE) {
+                toPack.add(hashOf(object));
+                before += object.length();
+            }
+        }
+        List<File> oldPacks = new ArrayList<>();
+        for (PackFile old : packs()) {
+            toPack.addAll(old.hashes());
+            before += old.length();
+            oldPacks.add(old.file());
+        }
+
+        List<List<String>> chains = new ArrayList<>();
+        for (Collection<String> history : histories) {
+            List<String> chain = new ArrayList<>();
+            for (String hash : history) {
+                if (toPack.remove(hash)) {
+                    chain.add(0, hash);
+                }
+            }
+            chains.add(chain);
+        }
+        for (String hash : toPack) {
+            chains.add(Collections.singletonList(hash));
+        }
+
+        packFile.getParentFile().mkdirs();
+        File temp = new File(packFile.getPath() + ".tmp");
+        File tempIndex = new File(PackFile.indexFor(packFile).getPath() + ".tmp");
+        int deltas = PackFile.write(temp, tempIndex, chains, this::get, algorithm);
+        replace(temp, packFile);
+        replace(tempIndex, PackFile.indexFor(packFile));
+        PackFile pack = new PackFile(packFile);
+        for (File old : oldPacks) {
+            if (!old.equals(packFile)) {
+                old.delete();
+                PackFile.indexFor(old).delete();
+            }
+        }
+        synchronized (this) {
+            packs = new ArrayList<>(List.of(pack));
+        }
+
+        for (File object : looseObjects()) {
+            if (pack.contains(hashOf(object))) {
+                object.delete();
+            }
+        }
+        return new PackSummary(pack.hashes().size(), deltas, before, packFile.length());
+    }
+
+    /** A summary of the result of packing objects. */
+    static class PackSummary {
+        /** Number of objects in the pack. */
+        final int objects;
+        /** Number of objects stored as deltas. */
+        final int deltas;
+        /** Bytes taken by the packed objects before packing. */
+        final long bytesBefore;
+        /** Bytes taken by the pack. */
+        final long bytesAfter;
+
+        /** A summary of a pack of OBJECTS objects, DELTAS of them deltas,
+         * that took BYTESBEFORE bytes before packing and BYTESAFTER bytes
+         * after. */
+        PackSummary(int objects, int deltas, long bytesBefore, long bytesAfter) {
+            this.objects = objects;
+            this.deltas = deltas;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+        }
+    }
+
+    /** Stores the objects in each of HISTORIES, whose contents are
+     * given by CONTENTS, in a new pack of their own. Each history lists
+     * successive versions of one file, oldest first, which are stored
+     * as deltas found with ALGORITHM, as by pack(). Objects that are
+     * already stored are left out. */
+    void putPack(Collection<? extends Collection<String>> histories,
+                 Map<String, byte[]> contents, Diff.Algorithm algorithm) {
+        List<List<String>> chains = new ArrayList<>();
+        for (Collection<String> history : histories) {
+            LinkedHashSet<String> chain = new LinkedHashSet<>();
+            for (String hash : history) {
+                if (!contains(hash)) {
+                    chain.add(hash);
+                }
+            }
+            if (!chain.isEmpty()) {
+                List<String> newestFirst = new ArrayList<>(chain);
+                Collections.reverse(newestFirst);
+                chains.add(newestFirst);
+            }
+        }
+        if (chains.isEmpty()) {
+            return;
+        }
+        packDir.mkdirs();
+        File file;
+        for (int n = 0;; n += 1) {
+            file = Utils.join(packDir, "import-" + System.currentTimeMillis()
+                    + "-" + n + ".pack");
+            if (!file.exists()) {
+                break;
+            }
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        File tempIndex = new File(PackFile.indexFor(file).getPath() + ".tmp");
+        PackFile.write(temp, tempIndex, chains, contents::get, algorithm);
+        replace(tempIndex, PackFile.indexFor(file));
+        replace(temp, file);
+        PackFile pack = new PackFile(file);
+        synchronized (this) {
+            packs().add(pack);
+        }
+    }
+
+    /** Returns the packs of this store, reading them if that has not
+     * been done yet. */
+    private synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            File[] files = packDir.listFiles((dir, name) -> name.endsWith(".pack"));
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    packs.add(new PackFile(file));
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the pack holding the object with HASH, or null if no
+     * pack does. */
+    private PackFile packWith(String hash) {
+        for (PackFile pack : packs()) {
+            if (pack.contains(hash)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the files of all loose objects, including those in the
+     * legacy committedBlobs directory. */
+    private List<File> looseObjects() {
+        List<File> result = new ArrayList<>();
+        File[] fanout = objectsDir.listFiles(ObjectStore::isFanoutDir);
+        for (File dir : fanout == null ? new File[0] : fanout) {
+            Collections.addAll(result, dir.listFiles(ObjectStore::isObjectFile));
+        }
+        File[] legacy = legacyDir.listFiles(ObjectStore::isObjectFile);
+        if (legacy != null) {
+            Collections.addAll(result, legacy);
+        }
+        return result;
+    }
+
+    /** Returns the hash of the loose object stored in FILE. */
+    private String hashOf(File file) {
+        if (isLegacy(file)) {
+            return file.getName();
+        }
+        return file.getParentFile().getName() + file.getName();
+    }
+
+    /** Returns true iff FILE is a loose object in the legacy
+     * committedBlobs directory. */
+    private boolean isLegacy(File file) {
+        return file.getParentFile().equals(legacyDir);
+    }
+
+    /** Returns true iff FILE is a fan-out directory of loose objects. */
+    private static boolean isFanoutDir(File file) {
+        return file.isDirectory() && file.getName().length() == FANOUT_DIGITS;
+    }
+
+    /** Returns true iff FILE holds a complete loose object. */
+    private static boolean isObjectFile(File file) {
+        return file.isFile() && !file.getName().endsWith(".tmp");
+    }
+
+    /** Compresses, in place, every stored object that is still raw.
+     * Those in the legacy committedBlobs directory are moved into the
+     * fan-out directories as they are compressed. Returns the number of
+     * bytes saved. */
+    long compressAll() {
+        long saved = 0;
+        for (File object : looseObjects()) {
+            if (isLegacy(object)) {
+                File file = path(object.getName());
+                file.getParentFile().mkdirs();
+                File temp = new File(file.getPath() + ".tmp");
+                Compression.compress(object, temp);
+                saved += object.length() - temp.length();
+                replace(temp, file);
+                object.delete();
+            } else if (!Compression.isCompressed(object)) {
+                File temp = new File(object.getPath() + ".tmp");
+                Compression.recompress(object, temp);
+                saved += object.length() - temp.length();
+                replace(temp, object);
+            }
+        }
+        return saved;
+    }
+
+    /** Renames the completely written file TEMP to TARGET. */
+    private static void replace(File temp, File target) {
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException("could not store object " + target.getName());
+        }
+    }
+
+    /** Returns the file holding the loose object with the given HASH,
+     * or null if it is in the pack. Throws IllegalArgumentException if
+     * there is no such object. */
+    private File find(String hash) {
+        File file = path(hash);
+        if (!file.isFile()) {
+            file = legacyPath(hash);
+        }
+        if (!file.isFile()) {
+            if (packWith(hash) != null) {
+                return null;
+            }
+            throw new IllegalArgumentException("no object " + hash);
+        }
+        return file;
+    }
+
+    /** Returns the file in which the object with HASH is stored. */
+    private File path(String hash) {
+        return Utils.join(objectsDir, hash.substring(0, FANOUT_DIGITS),
+                hash.substring(FANOUT_DIGITS));
+    }
+
+    /** Returns the file in which an older version of gitlet stored
+     * the object with HASH. */
+    private File legacyPath(String hash) {
+        return Utils.join(legacyDir, hash);
+    }
+}
@@ -0,0 +1,374 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** A single file holding many objects.
+ * Each entry holds either the full (compressed) contents of an object,
+ * or a compressed line delta (see Delta) against another object in the
+ * same pack, its base. Successive versions of the same file are
+ * chained this way, newest version stored in full, so that recent
+ * versions are quick to read and each older one costs only its
+ * changed lines. No chain is longer than MAX_DEPTH deltas.
+ * Next to each pack is an index holding the hashes of its objects in
+ * sorted order followed by their offsets, so an object is found by
+ * binary search. Both files are memory-mapped once and read in place;
+ * entries are handed out as slices of the mapping rather than copied.
+ * Objects rebuilt from deltas are kept in a small cache of delta bases,
+ * so reading the versions of a file in turn applies one delta each
+ * rather than the whole chain.
+ * @author Eesha Thaker
+ */
+class PackFile {
+
+    /** Magic number at the start of a pack. */
+    private static final byte[] MAGIC = {'G', 'P', 'A', 'K'};
+
+    /** Magic number at the start of a pack index. */
+    private static final byte[] INDEX_MAGIC = {'G', 'I', 'D', 'X'};
+
+    /** Version of the pack and index formats. */
+    static final int VERSION = 1;
+
+    /** Largest number of deltas that must be applied to rebuild an
+     * object. */
+    static final int MAX_DEPTH = 10;
+
+    /** Entry type of an object stored in full. */
+    private static final byte FULL = 0;
+
+    /** Entry type of an object stored as a delta. */
+    private static final byte DELTA = 1;
+
+    /** Length of an object hash in bytes. */
+    private static final int HASH_SIZE = Utils.UID_LENGTH / 2;
+
+    /** Size of the header of a pack: magic, version and entry count. */
+    private static final int HEADER_SIZE = MAGIC.length + 4 + 4;
+
+    /** Size of the header of an index: magic, version, length of the
+     * pack it indexes and entry count. */
+    private static final int INDEX_HEADER_SIZE = INDEX_MAGIC.length + 4 + 8 + 4;
+
+    /** The file holding the pack. */
+    private final File file;
+
+    /** The mapped contents of the pack. */
+    private final MappedByteBuffer data;
+
+    /** The mapped contents of the index. */
+    private final MappedByteBuffer index;
+
+    /** Number of objects in the pack. */
+    private final int count;
+
+    /** Largest total size of the objects in the delta base cache. */
+    static final int BASE_CACHE_BYTES = 1 << 24;
+
+    /** Recently rebuilt objects, by hash, least recently used first. */
+    private final LinkedHashMap<String, byte[]> bases =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the objects in bases. */
+    private long basesSize;
+
+    /** The pack stored in FILE. If its index is missing or was written
+     * for a different pack, it is rebuilt by scanning the pack. */
+    PackFile(File file) {
+        this.file = file;
+        data = map(file);
+        if (data.capacity() < HEADER_SIZE
+                || !Arrays.equals(magic(data, MAGIC.length), MAGIC)
+                || data.getInt(MAGIC.length) != VERSION) {
+            throw new IllegalArgumentException("not a gitlet pack");
+        }
+        count = data.getInt(MAGIC.length + 4);
+        File indexFile = indexFor(file);
+        if (!isIndexOf(indexFile, file.length())) {
+            writeIndex(indexFile, scan(), file.length());
+        }
+        index = map(indexFile);
+    }
+
+    /** Returns the index file of the pack in FILE. */
+    static File indexFor(File file) {
+        String name = file.getName();
+        return new File(file.getParentFile(),
+                name.substring(0, name.lastIndexOf('.')) + ".idx");
+    }
+
+    /** Returns the file holding this pack. */
+    File file() {
+        return file;
+    }
+
+    /** Returns the size of this pack in bytes. */
+    long length() {
+        return data.capacity();
+    }
+
+    /** Returns true iff this pack holds the object with HASH. */
+    boolean contains(String hash) {
+        return find(Utils.fromHex(hash)) >= 0;
+    }
+
+    /** Returns the hashes of all objects in this pack, in sorted order. */
+    Set<String> hashes() {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < count; i += 1) {
+            index.get(INDEX_HEADER_SIZE + i * HASH_SIZE, hash);
+            result.add(Utils.toHex(hash));
+        }
+        return result;
+    }
+
+    /** Returns the contents of the object with HASH, applying any
+     * deltas needed to rebuild it. */
+    byte[] get(String hash) {
+        synchronized (bases) {
+            byte[] cached = bases.get(hash);
+            if (cached != null) {
+                return cached.clone();
+            }
+        }
+        int i = find(Utils.fromHex(hash));
+        if (i < 0) {
+            throw new IllegalArgumentException("no object " + hash);
+        }
+        int offset = offsetAt(i);
+        byte[] payload = Compression.decompress(payload(offset));
+        if (data.get(offset + HASH_SIZE) == FULL) {
+            return payload;
+        }
+        byte[] base = new byte[HASH_SIZE];
+        data.get(offset + HASH_SIZE + 1, base);
+        byte[] result = Delta.apply(get(Utils.toHex(base)), payload);
+        cache(hash, result);
+        return result;
+    }
+
+    /** Keeps CONTENTS, the object with HASH rebuilt from a delta, in the
+     * delta base cache, dropping the least recently used objects to keep
+     * within BASE_CACHE_BYTES. */
+    private void cache(String hash, byte[] contents) {
+        if (contents.length > BASE_CACHE_BYTES / 4) {
+            return;
+        }
+        synchronized (bases) {
+            if (bases.put(hash, contents.clone()) == null) {
+                basesSize += contents.length;
+            }
+            Iterator<byte[]> eldest = bases.values().iterator();
+            while (basesSize > BASE_CACHE_BYTES) {
+                basesSize -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** Returns the stored (compressed) payload of the entry at OFFSET,
+     * as a slice of the mapped pack. */
+    private ByteBuffer payload(int offset) {
+        int pos = lengthPosition(offset);
+        return data.slice(pos + 4, data.getInt(pos));
+    }
+
+    /** Returns the position of the payload length of the entry at
+     * OFFSET, which follows the entry's hash, type and base hash. */
+    private int lengthPosition(int offset) {
+        int pos = offset + HASH_SIZE + 1;
+        if (data.get(offset + HASH_SIZE) == DELTA) {
+            pos += HASH_SIZE;
+        }
+        return pos;
+    }
+
+    /** Returns the position in the index of the object whose raw hash
+     * is KEY, or -1 if it is not in this pack. */
+    private int find(byte[] key) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareHash(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the I-th hash in the index with KEY as unsigned bytes. */
+    private int compareHash(int i, byte[] key) {
+        int base = INDEX_HEADER_SIZE + i * HASH_SIZE;
+        for (int k = 0; k < HASH_SIZE; k += 1) {
+            int cmp = Byte.compareUnsigned(index.get(base + k), key[k]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the offset in the pack of the I-th object in the index. */
+    private int offsetAt(int i) {
+        return (int) index.getLong(INDEX_HEADER_SIZE + count * HASH_SIZE + i * 8);
+    }
+
+    /** Returns the hashes of the objects in the mapped pack, mapped to
+     * the offsets of their entries, by reading every entry. */
+    private Map<String, Long> scan() {
+        Map<String, Long> result = new HashMap<>();
+        int offset = HEADER_SIZE;
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < count; i += 1) {
+            data.get(offset, hash);
+            result.put(Utils.toHex(hash), (long) offset);
+            int pos = lengthPosition(offset);
+            offset = pos + 4 + data.getInt(pos);
+        }
+        return result;
+    }
+
+    /** Returns true iff INDEXFILE exists and indexes a pack of
+     * PACKLENGTH bytes. */
+    private static boolean isIndexOf(File indexFile, long packLength) {
+        if (!indexFile.isFile() || indexFile.length() < INDEX_HEADER_SIZE) {
+            return false;
+        }
+        MappedByteBuffer header = map(indexFile);
+        return Arrays.equals(magic(header, INDEX_MAGIC.length), INDEX_MAGIC)
+                && header.getInt(INDEX_MAGIC.length) == VERSION
+                && header.getLong(INDEX_MAGIC.length + 4) == packLength;
+    }
+
+    /** Writes to INDEXFILE the index of a pack of PACKLENGTH bytes whose
+     * objects' hashes are mapped to their offsets by OFFSETS. */
+    private static void writeIndex(File indexFile, Map<String, Long> offsets,
+                                   long packLength) {
+        TreeMap<String, Long> sorted = new TreeMap<>(offsets);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile), Utils.CHUNK_SIZE))) {
+            out.write(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(packLength);
+            out.writeInt(sorted.size());
+            for (String hash : sorted.keySet()) {
+                out.write(Utils.fromHex(hash));
+            }
+            for (long offset : sorted.values()) {
+                out.writeLong(offset);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the first LENGTH bytes of BUFFER. */
+    private static byte[] magic(ByteBuffer buffer, int length) {
+        byte[] result = new byte[length];
+        buffer.get(0, result);
+        return result;
+    }
+
+    /** Returns the contents of FILE, mapped read-only. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("pack too large: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a pack to FILE, and its index to INDEXFILE, holding every
+     * object in each of HISTORIES, whose contents are produced by
+     * SOURCE. Each history lists the successive versions of one file,
+     * newest first; each version after the first is stored as a delta
+     * against the one before it, found by Diff using ALGORITHM, when the
+     * delta is less than half its size. Returns the number of objects
+     * stored as deltas. */
+    static int write(File file, File indexFile,
+                     Collection<List<String>> histories,
+                     Function<String, byte[]> source,
+                     Diff.Algorithm algorithm) {
+        HashMap<String, Integer> depths = new HashMap<>();
+        HashMap<String, Long> offsets = new HashMap<>();
+        int deltas = 0;
+        long offset = HEADER_SIZE;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), Utils.CHUNK_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            int count = 0;
+            for (List<String> history : histories) {
+                count += history.size();
+            }
+            out.writeInt(count);
+
+            for (List<String> history : histories) {
+                String base = null;
+                List<String> baseLines = null;
+                for (String hash : history) {
+                    byte[] contents = source.apply(hash);
+                    String text = Delta.text(contents);
+                    List<String> lines = text == null ? null : Delta.lines(text);
+                    byte[] delta = null;
+                    if (base != null && baseLines != null && lines != null
+                            && depths.get(base) < MAX_DEPTH) {
+                        delta = Delta.create(baseLines, lines, algorithm);
+                    }
+                    offsets.put(hash, offset);
+                    out.write(Utils.fromHex(hash));
+                    byte[] payload;
+                    if (delta != null && delta.length < contents.length / 2) {
+                        payload = Compression.compress(delta);
+                        out.writeByte(DELTA);
+                        out.write(Utils.fromHex(base));
+                        offset += HASH_SIZE;
+                        depths.put(hash, depths.get(base) + 1);
+                        deltas += 1;
+                    } else {
+                        payload = Compression.compress(contents);
+                        out.writeByte(FULL);
+                        depths.put(hash, 0);
+                    }
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                    offset += HASH_SIZE + 1 + 4 + payload.length;
+                    base = hash;
+                    baseLines = lines;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeIndex(indexFile, offsets, offset);
+        return deltas;
+    }
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** Applies a function to a stream of items on a pool of worker
+ * threads, handing the results on in the order the items were added.
+ * At most a window of items is in flight: adding one more first waits
+ * for the oldest result and hands it on, so a stream of any length
+ * passes through in bounded memory while the workers run ahead of the
+ * consumer.
+ * @author Eesha Thaker
+ */
+class Pipeline<T, R> implements AutoCloseable {
+
+    /** Applied to each item. */
+    private final Function<T, R> function;
+
+    /** Receives the results, in order. */
+    private final Consumer<R> sink;
+
+    /** Largest number of items in flight. */
+    private final int window;
+
+    /** The workers, or null if items are processed on the caller's
+     * thread. */
+    private final ExecutorService pool;
+
+    /** Results not yet handed on, oldest first. */
+    private final ArrayDeque<Future<R>> pending = new ArrayDeque<>();
+
+    /** A pipeline applying FUNCTION to each item on up to WORKERS
+     * threads, with up to WINDOW items in flight, and passing the
+     * results to SINK. */
+    Pipeline(int workers, int window, Function<T, R> function, Consumer<R> sink) {
+        this.function = function;
+        this.sink = sink;
+        this.window = Math.max(1, window);
+        this.pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+    }
+
+    /** Adds ITEM to the stream, first handing on the oldest result if
+     * the window is full. */
+    void add(T item) {
+        if (pool == null) {
+            sink.accept(function.apply(item));
+            return;
+        }
+        if (pending.size() >= window) {
+            next();
+        }
+        pending.add(pool.submit(() -> function.apply(item)));
+    }
+
+    /** Hands on every result still pending. */
+    void finish() {
+        while (!pending.isEmpty()) {
+            next();
+        }
+    }
+
+    /** Waits for the oldest pending result and hands it on. */
+    private void next() {
+        try {
+            sink.accept(pending.poll().get());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        }
+    }
+
+    /** Stops the workers, abandoning any results not handed on. */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
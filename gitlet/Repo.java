@@ -5,11 +5,16 @@ import org.antlr.v4.runtime.tree.Tree;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.regex.Matcher;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.io.*;
 
@@ -24,13 +29,29 @@ import java.io.*;
 
 public class Repo implements java.io.Serializable {
 
+    /** Format of the dates of commits in logs, in the local time zone.
+     * Unlike SimpleDateFormat, it can be shared between threads. */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z")
+                    .withZone(ZoneId.systemDefault());
+
+    /** Date shown in log for the initial commit. */
+    private static final String INITIAL_DATE = "Wed Dec 31 16:00:00 1969 -0800";
+
+    /** Size of the buffer through which logs are written. */
+    private static final int LOG_BUFFER = 1 << 20;
+
+    /** Number of commits each global-log worker may decode ahead of
+     * those written. */
+    private static final int LOG_PREFETCH = 64;
+
     /** Pointer to master branch. */
     private Commit master;
 
-    /** File storing blobs that have been committed;
+    /** Store of blobs that have been committed;
      * copies of files that have been committed (referenced from
      * commit objects through their hashes). */
-    private File committedBlobs;
+    private ObjectStore objectStore;
 
     /** Pointer to current commit */
     private Commit HEAD;
@@ -46,9 +67,6 @@ public class Repo implements java.io.Serializable {
     /** File used to persist stageForRemoval. */
     private File stageForRemovalStorage;
 
-    /** File where all commits objects are stored. */
-    private File commits;
-
     /** File referencing gitletDirectory. */
     private File gitletDir;
 
@@ -63,10 +81,12 @@ public class Repo implements java.io.Serializable {
     /** File used to persist HEAD pointer. */
     private File headPointer;
 
-    /** TreeMap mapping commit hashIDs to references
-     * to those commit objects
-     */
-    private TreeMap<String, Commit> allCommits;
+    /** Append-only store of all commit objects, indexed
+     * by their hashIDs. */
+    private CommitStore commitStore;
+
+    /** Store of the trees holding the files of commits. */
+    private TreeStore trees;
 
     /** TreeMap mapping the names of branches, and the
      * commit object that they point to. */
@@ -75,23 +95,54 @@ public class Repo implements java.io.Serializable {
      /** File used to persist allBranches TreeMap. */
     private File allBranchesFile;
 
-    /** File used to persist allCommits TreeMap */
-    private File allCommitsFile;
+    /** Repository-level settings. */
+    private Config config;
+
+    /** Blob hashes of working files, keyed by their stat data. */
+    private StatCache statCache;
+
+    /** Set of the hashes of all committed blobs. */
+    private BlobSet blobSet;
+
+    /** Parent links and generation numbers of all commits. */
+    private CommitGraph commitGraph;
+
+    /** Commit messages and their words, mapped to the commits that
+     * have them. */
+    private MessageIndex messageIndex;
+
+    /** Serialized contents of the state files (HEAD, branches and
+     * staging area) written since the last flush, by file. */
+    private LinkedHashMap<File, byte[]> pendingState = new LinkedHashMap<>();
+
+    /** Journal through which pending state is written at each flush. */
+    private Journal journal;
 
     /** Initializes files within the .gitlet repository within CWD. */
     public Repo() {
         this.gitletDir = new File(currentWorkingDir+"/.gitlet");
-        this.commits = new File(gitletDir+"/commits");
-        this.committedBlobs = new File(gitletDir+"/committedBlobs");
+        this.objectStore = new ObjectStore(gitletDir);
         this.newBlobReferencesStorage = new File(gitletDir+"/newBlobReferences");
         this.newBlobReferences = new TreeMap<>();
         this.headPointer = new File(gitletDir+"/headPointer");
-        this.allCommits = new TreeMap<>();
-        this.allCommitsFile = new File(gitletDir+"/allCommits");
+        this.trees = new TreeStore(objectStore);
+        this.commitStore = new CommitStore(gitletDir, trees);
+        this.config = new Config(gitletDir);
+        this.statCache = new StatCache(gitletDir);
+        this.blobSet = new BlobSet(gitletDir);
+        this.commitGraph = new CommitGraph(gitletDir);
+        this.messageIndex = new MessageIndex(gitletDir);
+        boolean compressed = config.getBoolean(Config.COMPRESSION, false);
+        this.objectStore.setCompressed(compressed);
+        this.commitStore.setCompressed(compressed);
+        this.commitStore.setCacheSize(
+                config.getInt(Config.COMMIT_CACHE, CommitCache.DEFAULT_CAPACITY));
         this.stageForRemoval = new TreeMap<>();
         this.stageForRemovalStorage = new File(gitletDir+"/stageForRemoval");
         this.allBranches = new TreeMap<>();
         this.allBranchesFile = new File(gitletDir+"/allBranches");
+        this.journal = new Journal(gitletDir);
+        this.journal.recover();
     }
 
     /** GOAL: Create gitlet directory in CWD.
@@ -113,14 +164,13 @@ public class Repo implements java.io.Serializable {
         //Create gitlet directory if doesn't already exist
         gitletDir.mkdir();
         //subdirectories within gitletDirectory
-        commits.mkdir();
-        committedBlobs.mkdir();
+        objectStore.init();
 
         //create first commit
         Commit commit0 = new Commit("initial commit",
                 Date.from(Instant.EPOCH), null, null);
         commit0.setCurrID();
-        assert(commit0.blobReferences != null);
+        commit0.setTree(trees.write(commit0.getBlobReferences()));
 
         //Set head and master pointers
         HEAD = commit0;
@@ -128,16 +178,14 @@ public class Repo implements java.io.Serializable {
         master.setName("master");
         allBranches.put("master", HEAD);
 
-        //add commit0 to treeMap
-        allCommits.put(commit0.getCurrID(), commit0);
+        //add commit0 to commit store
+        commitStore.put(commit0);
 
         //create first commit
-        Utils.writeContents(new File(commits+"/commit0"), Utils.serialize(master));
-        Utils.writeContents(headPointer, Utils.serialize(HEAD));
-        Utils.writeContents(allCommitsFile, Utils.serialize(allCommits));
-        Utils.writeContents(allBranchesFile, Utils.serialize(allBranches));
-        Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
-        Utils.writeContents(stageForRemovalStorage, Utils.serialize(stageForRemoval));
+        writeState(headPointer, HEAD);
+        writeState(allBranchesFile, allBranches);
+        writeState(newBlobReferencesStorage, newBlobReferences);
+        writeState(stageForRemovalStorage, stageForRemoval);
     }
 
     /** GOAL: Serialize files (make copy of contents of files) to create
@@ -164,39 +212,38 @@ public class Repo implements java.io.Serializable {
         } else {
             //If file is in removed files directory, simply un-remove it, and don't add it
             //to staging area
-            stageForRemoval = Utils.readObject(stageForRemovalStorage, TreeMap.class);
+            stageForRemoval = readState(stageForRemovalStorage, TreeMap.class);
             Set<String> removedFiles = stageForRemoval.keySet();
             for (String file : removedFiles) {
                 if (file.equals(addedFile)) {
                     stageForRemoval.remove(file);
-                    Utils.writeContents(stageForRemovalStorage, Utils.serialize(stageForRemoval));
+                    writeState(stageForRemovalStorage, stageForRemoval);
                     return;
                 }
             }
 
 
-            Blob addedBlob = new Blob(filetoStage);
-            String blobHash = addedBlob.getHash();
-            HEAD = Utils.readObject(headPointer, Commit.class);
-            newBlobReferences = Utils.readObject(newBlobReferencesStorage, TreeMap.class);
+            String blobHash = statCache.hash(filetoStage);
+            HEAD = readState(headPointer, Commit.class);
+            newBlobReferences = readState(newBlobReferencesStorage, TreeMap.class);
 
-            if (!HEAD.blobReferences.containsKey(addedFile) && !newBlobReferences.containsKey(addedFile)) {
+            if (!HEAD.getBlobReferences().containsKey(addedFile) && !newBlobReferences.containsKey(addedFile)) {
                 //serialize the file and add it to staging area TreeMap
                 newBlobReferences.put(addedFile, blobHash);
-                Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
+                writeState(newBlobReferencesStorage, newBlobReferences);
 
             } else {
-                if (HEAD.blobReferences.containsKey(addedFile)
-                        && !HEAD.blobReferences.get(addedFile).equals(blobHash)) {
+                if (HEAD.getBlobReferences().containsKey(addedFile)
+                        && !HEAD.getBlobReferences().get(addedFile).equals(blobHash)) {
                     newBlobReferences.put(addedFile, blobHash);
-                    Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
+                    writeState(newBlobReferencesStorage, newBlobReferences);
                 }
-                else if (!HEAD.blobReferences.containsValue(blobHash) && !newBlobReferences.containsValue(blobHash)) {
+                else if (!HEAD.getBlobReferences().containsValue(blobHash) && !newBlobReferences.containsValue(blobHash)) {
                     //serialize the file and add it to staging area TreeMap
                     newBlobReferences.put(addedFile, blobHash);
-                    Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
+                    writeState(newBlobReferencesStorage, newBlobReferences);
 
-                } else if (HEAD.blobReferences.containsValue(blobHash) && newBlobReferences.containsValue(blobHash)) {
+                } else if (HEAD.getBlobReferences().containsValue(blobHash) && newBlobReferences.containsValue(blobHash)) {
                     //do nothing, don't add file to staging area
                }
             }
@@ -210,9 +257,9 @@ public class Repo implements java.io.Serializable {
     @SuppressWarnings("unchecked")
     public void rm(String removedFile) {
         //If file is not being tracked by current commit, don't remove it (exception case)
-        HEAD = Utils.readObject(headPointer, Commit.class);
-        newBlobReferences = Utils.readObject(newBlobReferencesStorage, TreeMap.class);
-        if (!HEAD.blobReferences.containsKey(removedFile) && !newBlobReferences.containsKey(removedFile)) {
+        HEAD = readState(headPointer, Commit.class);
+        newBlobReferences = readState(newBlobReferencesStorage, TreeMap.class);
+        if (!HEAD.getBlobReferences().containsKey(removedFile) && !newBlobReferences.containsKey(removedFile)) {
            System.out.println("No reason to remove the file.");
         } else {
             //If file is being tracked by current commit:
@@ -220,22 +267,22 @@ public class Repo implements java.io.Serializable {
             boolean exists = cwdFile.exists();
 
             //stage file for removal (add it to removal staging directory) IF FILE WAS TRACKED IN PREVIOUS COMMIT
-            if (HEAD.blobReferences.containsKey(removedFile)) {
-                stageForRemoval.put(removedFile, HEAD.blobReferences.get(removedFile));
-                Utils.writeContents(stageForRemovalStorage, Utils.serialize(stageForRemoval));
+            if (HEAD.getBlobReferences().containsKey(removedFile)) {
+                stageForRemoval.put(removedFile, HEAD.getBlobReferences().get(removedFile));
+                writeState(stageForRemovalStorage, stageForRemoval);
                 //Remove it from CWD, only IF IT WAS TRACKED IN PREVIOUS COMMIT
                 cwdFile.delete();
                 //Make sure that file is not tracked by next commit (since it has been deleted)
-                HEAD.blobReferences.remove(removedFile);
+                HEAD.getBlobReferences().remove(removedFile);
             }
 
         }
 
         //If file exists in staging area, remove it from staging area
         newBlobReferences.remove(removedFile);
-        HEAD.blobReferences.remove(removedFile);
-        Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
-        Utils.writeContents(headPointer, Utils.serialize(HEAD));
+        HEAD.getBlobReferences().remove(removedFile);
+        writeState(newBlobReferencesStorage, newBlobReferences);
+        writeState(headPointer, HEAD);
     }
 
     /** Add a new commit object to the commit tree:
@@ -244,14 +291,24 @@ public class Repo implements java.io.Serializable {
      *     message = new message
      *     parentHash1 = HEAD.currID (hash value of prev commit)
      * For all files in staging directory:
-     *      Move files to committedBlobs directory (persistence)
+     *      Move files to object store (persistence)
      *      Delete these files (clear staging directory, will not harm CWD
      *      since all files in staging directory are copies of original files.
      * Adjust head/master pointers.
      * @param message
      */
-    @SuppressWarnings("unchecked")
     public void commit(String message) throws IOException {
+        commit(message, null);
+    }
+
+    /** Commits the staged files with the given message, recording
+     * parent2 as the second parent of the new commit (null unless
+     * the commit is the result of a merge).
+     * @param message
+     * @param parent2
+     */
+    @SuppressWarnings("unchecked")
+    private void commit(String message, String parent2) throws IOException {
         Pattern p = Pattern.compile(".+");
         Matcher m = p.matcher(message);
 
@@ -259,83 +316,78 @@ public class Repo implements java.io.Serializable {
             System.out.println("Please enter a commit message.");
         }
 
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        HEAD = Utils.readObject(headPointer, Commit.class);
-        newBlobReferences = Utils.readObject(newBlobReferencesStorage, TreeMap.class);
-        stageForRemoval = Utils.readObject(stageForRemovalStorage, TreeMap.class);
+        HEAD = readState(headPointer, Commit.class);
+        newBlobReferences = readState(newBlobReferencesStorage, TreeMap.class);
+        stageForRemoval = readState(stageForRemovalStorage, TreeMap.class);
         if (newBlobReferences.keySet().size() == 0 && stageForRemoval.keySet().size() == 0) {
             System.out.println("No changes added to the commit.");
             return;
         }
 
         //delete all files that are staged for removal
+        TreeMap<String, String> changes = new TreeMap<>();
         for (String f : stageForRemoval.keySet()) {
             newBlobReferences.remove(f);
+            changes.put(f, null);
         }
+        changes.putAll(newBlobReferences);
         stageForRemoval = new TreeMap<String, String>();
-        Utils.writeContents(stageForRemovalStorage, Utils.serialize(stageForRemoval));
+        writeState(stageForRemovalStorage, stageForRemoval);
 
-        //set fields of new commit object
+        //set fields of new commit object, with its own copy of the files
         Commit next = Commit.copy(HEAD);
         next.setTimeStamp(new Date());
         next.setCommitMessage(message);
         next.setParentHash1(HEAD.getCurrID());
+        next.setParentHash2(parent2);
         next.setCurrID();
-        File newCommit = new File(commits.getPath()+"/"+next.getCurrID());
-        Utils.writeObject(newCommit, next);
-        next.blobReferences = HEAD.blobReferences;
-        for (String file : newBlobReferences.keySet()) {
-            if (!HEAD.blobReferences.containsKey(file)) {
-                next.blobReferences.put(file, newBlobReferences.get(file));
-            } else if (HEAD.blobReferences.containsKey(file)) {
-                next.blobReferences.put(file, newBlobReferences.get(file));
+        if (HEAD.getTree() == null) {
+            //commits made before trees carry only their files: write them all
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    next.getBlobReferences().remove(change.getKey());
+                } else {
+                    next.getBlobReferences().put(change.getKey(), change.getValue());
+                }
             }
+            next.setTree(trees.write(next.getBlobReferences()));
+        } else {
+            //write new trees only for the directories holding changed files
+            next.setTree(trees.update(HEAD.getTree(), changes));
         }
+        //the tree is the one record of the files: read them back from it
+        next.readFilesFrom(trees);
 
-        //Move blobs from staging directory to committedBlobs directory
+        //Move blobs from staging directory to object store
         Set<String> stagedForAddition = newBlobReferences.keySet();
         for (String stagedFile : stagedForAddition) {
             File addFile = new File(currentWorkingDir.getPath()+"/"+stagedFile);
-            Blob persistingBlob = new Blob(addFile);
-            File persistedBlobFile = new File(committedBlobs.getPath()+"/"+persistingBlob.getHash());
-
-            File[] currentBlobs = committedBlobs.listFiles();
-            boolean exists = false;
-            for (File blob : currentBlobs) {
-                if (blob.getName().equals(persistedBlobFile.getName())) {
-                    exists = true;
-                }
-            }
-
-            if (exists == false) {
-                Utils.writeContents(persistedBlobFile, Utils.readContentsAsString(addFile));
-            }
+            objectStore.putFile(statCache.hash(addFile), addFile);
         }
 
         //re-adjust head/branch pointers:
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
         Commit currBranch = allBranches.get(HEAD.getName());
 
         String name = HEAD.getName();
         //Move the head pointer
         HEAD = next;
         HEAD.setName(name);
-        Utils.writeObject(headPointer, HEAD);
+        writeState(headPointer, HEAD);
 
         //Move the branch head of whatever HEAD is set to (HEAD points to current branch)
         currBranch = HEAD;
         allBranches.replace(HEAD.getName(), HEAD);
-        Utils.writeContents(allBranchesFile, Utils.serialize(allBranches));
+        writeState(allBranchesFile, allBranches);
 
         //reset TreeMap with staged commits
         newBlobReferences = new TreeMap<>();
-        Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
-
-        //How to set parentHash2 of commit object?
-
-        allCommits.put(HEAD.getCurrID(), HEAD);
-        Utils.writeContents(allCommitsFile, Utils.serialize(allCommits));
+        writeState(newBlobReferencesStorage, newBlobReferences);
 
+        commitStore.put(HEAD);
+        blobSet.update(commitStore);
+        commitGraph.update(commitStore);
+        messageIndex.update(commitStore);
     }
 
     /** Makes copy of file with name fileName from HEAD commit,
@@ -347,7 +399,7 @@ public class Repo implements java.io.Serializable {
     public void checkout(String fileName) {
         //throw error if file isn't found in iteration
         //get blobReferences from HEAD object, which are persisted in memory
-        HEAD = Utils.readObject(headPointer, Commit.class);
+        HEAD = readState(headPointer, Commit.class);
         checkoutID(HEAD.getCurrID(), fileName);
     }
 
@@ -359,33 +411,40 @@ public class Repo implements java.io.Serializable {
      * If file does not exist in given commit, throw error. */
     @SuppressWarnings("unchecked")
     public void checkoutID(String commitID, String fileName) {
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        Commit thisCommit = null;
-        for (String c : allCommits.keySet()) {
-            if (c.substring(0, 8).equals(commitID.substring(0, 8))) {
-                thisCommit = allCommits.get(c);
-                break;
-            }
-        }
+        Commit thisCommit = resolveCommit(commitID);
 
         if (thisCommit == null) {
-            System.out.println("No commit with that id exists.");
             return;
-        } else if (!thisCommit.blobReferences.containsKey(fileName)) {
+        } else if (!thisCommit.getBlobReferences().containsKey(fileName)) {
             System.out.println("File does not exist in that commit.");
             return;
         } else {
                 //Make a copy of file, overwrite version currently in CWD
                 File copyFile = new File(currentWorkingDir.getPath()+"/"+ fileName);
-                String blobHash = thisCommit.blobReferences.get(fileName);
-                String fileContents = Utils.readContentsAsString(
-                        new File(committedBlobs.getPath()+"/"+blobHash));
-                Utils.writeContents(copyFile, fileContents);
+                String blobHash = thisCommit.getBlobReferences().get(fileName);
+                objectStore.copyTo(blobHash, copyFile);
             }
 
         //set HEAD pointer to specified commit
         HEAD = thisCommit;
-        Utils.writeContents(headPointer, Utils.serialize(HEAD));
+        writeState(headPointer, HEAD);
+    }
+
+    /** Returns the commit whose ID starts with prefix. If no commit
+     * or more than one commit matches, prints an error and returns null. */
+    private Commit resolveCommit(String prefix) {
+        List<String> matches = commitStore.resolve(prefix);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id " + prefix + "; it matches:");
+            for (String id : matches) {
+                System.out.println(commitStore.abbreviate(id, 7));
+            }
+            return null;
+        }
+        return commitStore.get(matches.get(0));
     }
 
     /** Checks out all commits at head of branch branchName.
@@ -396,8 +455,8 @@ public class Repo implements java.io.Serializable {
      * REMINDERS: master = current branch. HEAD = most recent commit. */
     @SuppressWarnings("unchecked")
     public void checkoutBranch(String branchName) {
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
-        HEAD = Utils.readObject(headPointer, Commit.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
+        HEAD = readState(headPointer, Commit.class);
 
         //if no such branch exists, throw error case
         if (!allBranches.containsKey(branchName)) {
@@ -418,94 +477,87 @@ public class Repo implements java.io.Serializable {
             return;
         }
 
+        //Delete files tracked in HEAD but not branchName commit,
+        //and write only the files whose contents differ
         Commit checkoutCommit = allBranches.get(branchName);
-        //Delete (rm) any files that are tracked in HEAD commit but not branchName commit
-        for (String blob : HEAD.blobReferences.keySet()) {
-            if (!checkoutCommit.blobReferences.containsKey(blob)) {
-                File toRemove = new File(currentWorkingDir.getPath() + "/" + blob);
-                Utils.restrictedDelete(toRemove);
-            }
-        }
-
-        //If there is a file in the CWD that isn't tracked in current branch, throw error:
-        //Gives list of all files in branch
-        ArrayList<String> branchFiles = new ArrayList<String>();
-        HEAD = checkoutCommit;
-        Commit currCommit = HEAD;
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        while (currCommit.getParentHash1() != null) {
-            for (String blob : currCommit.blobReferences.keySet()) {
-                branchFiles.add(blob);
-            }
-            currCommit = allCommits.get(currCommit.getParentHash1());
-        }
-
-        //Check out all blobs at current branch/commit
-        for (String blob : checkoutCommit.blobReferences.keySet()) {
-            checkoutID(checkoutCommit.getCurrID(), blob);
-        }
+        checkoutTree(HEAD, checkoutCommit);
 
         //Set head pointer to current branch
         HEAD = checkoutCommit;
         HEAD.setName(branchName);
-        Utils.writeContents(headPointer, Utils.serialize(HEAD));
+        writeState(headPointer, HEAD);
+        clearStagingArea();
+    }
 
-        //clear staging area
-        newBlobReferences = new TreeMap<String, String>();
-        Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
+    /** Changes the files in the CWD from those tracked by commit
+     * from to those tracked by commit to, writing each changed file
+     * once, on several threads. */
+    private void checkoutTree(Commit from, Commit to) {
+        WorkingTree tree = new WorkingTree(currentWorkingDir, statCache,
+                config.getInt(Config.CHECKOUT_WORKERS, Runtime.getRuntime().availableProcessors()));
+        tree.checkout(from.getBlobReferences(), to.getBlobReferences(), objectStore);
+    }
 
+    /** Empties the staging area, both files staged for addition
+     * and files staged for removal. */
+    private void clearStagingArea() {
+        newBlobReferences = new TreeMap<String, String>();
+        writeState(newBlobReferencesStorage, newBlobReferences);
+        stageForRemoval = new TreeMap<String, String>();
+        writeState(stageForRemovalStorage, stageForRemoval);
     }
 
     /** Display information about each commit, starting from HEAD.
      * Prints the following information:
      *      ===
      *      commit <commit's hashID>
-     *      commit's timeStamp, in PST
+     *      commit's timeStamp, in the local time zone
      *      commit's message
      */
-    @SuppressWarnings("unchecked")
     public void log() throws ParseException {
-        HEAD = Utils.readObject(headPointer, Commit.class);
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        Commit currCommit = HEAD;
-
-        SimpleDateFormat myDate = new SimpleDateFormat("Z");
-        String timeOffset = myDate.format(currCommit.getTimeStamp());
-
-        while (currCommit.getParentHash1() != null) {
-            //special case for merge commits
-            if (currCommit.getParentHash2() != null) {
-                System.out.println("===");
-                System.out.println("commit " + currCommit.getCurrID());
-
-                String mergeString = "Merge: " + currCommit.getParentHash1().substring(0, 7)
-                        + " " + currCommit.getParentHash2().substring(0, 7);
-                System.out.println(mergeString);
-
-                //Format timeStamp correctly to match desired output
-                System.out.println("Date: " + String.format("%1$ta %1$tb %1$td %1$tT %1$tY ", currCommit.getTimeStamp()) + timeOffset);
-
-                System.out.println(currCommit.getCommitMessage());
-                System.out.println();
-            } else {
-                System.out.println("===");
-                System.out.println("commit " + currCommit.getCurrID());
-
-                //Format timeStamp correctly to match desired output
-                System.out.println("Date: " + String.format("%1$ta %1$tb %1$td %1$tT %1$tY ", currCommit.getTimeStamp()) + timeOffset);
+        log(Integer.MAX_VALUE, null, null);
+    }
 
-                System.out.println(currCommit.getCommitMessage());
-                System.out.println();
+    /** Displays information about at most maxCount commits, starting
+     * from HEAD and following first parents, as log() does, leaving out
+     * commits made after until, if it is not null, and stopping at the
+     * first commit made before since, if it is not null. The walk reads
+     * the parents and timestamps from the commit graph, so only the
+     * commits displayed are read, and a walk bounded by count or by
+     * since stops as soon as the bound is reached. */
+    public void log(int maxCount, Instant since, Instant until) {
+        HEAD = readState(headPointer, Commit.class);
+        commitGraph.update(commitStore);
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), LOG_BUFFER));
+        int shown = 0;
+        for (int pos = commitGraph.position(HEAD.getCurrID());
+             pos >= 0 && shown < maxCount; pos = commitGraph.parent1(pos)) {
+            long time = commitGraph.time(pos);
+            if (since != null && time < since.toEpochMilli()) {
+                break;
+            } else if (until == null || time <= until.toEpochMilli()) {
+                out.print(logEntry(commitStore.get(commitGraph.id(pos))));
+                shown += 1;
             }
-
-            currCommit = allCommits.get(currCommit.getParentHash1());
         }
+        out.flush();
+    }
 
-        //prints information of commit0
-        System.out.println("===");
-        System.out.println("commit " + currCommit.getCurrID());
-        System.out.println("Date: Wed Dec 31 16:00:00 1969 -0800");
-        System.out.println(currCommit.getCommitMessage());
+    /** Returns the log entry of commit c. The initial commit ends the
+     * log, so its entry has no blank line after it. */
+    private static String logEntry(Commit c) {
+        StringBuilder entry = new StringBuilder("===\ncommit ").append(c.getCurrID());
+        if (c.getParentHash1() == null) {
+            return entry.append("\nDate: ").append(INITIAL_DATE).append('\n')
+                    .append(c.getCommitMessage()).append('\n').toString();
+        }
+        if (c.getParentHash2() != null) {
+            entry.append("\nMerge: ").append(c.getParentHash1(), 0, 7)
+                    .append(' ').append(c.getParentHash2(), 0, 7);
+        }
+        return entry.append("\nDate: ").append(DATE_FORMAT.format(c.getTimeStamp().toInstant()))
+                .append('\n').append(c.getCommitMessage()).append("\n\n").toString();
     }
 
     /** Displays metadata about gitlet subdirectories:
@@ -532,8 +584,8 @@ public class Repo implements java.io.Serializable {
         //Print out all the branches, with a * next to the current branch
         System.out.println("=== Branches ===");
 
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
-        HEAD = Utils.readObject(headPointer, Commit.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
+        HEAD = readState(headPointer, Commit.class);
         String currBranch = HEAD.getName();
         System.out.println("*" + currBranch);
 
@@ -547,7 +599,7 @@ public class Repo implements java.io.Serializable {
 
         //Print out all files staged for addition
         System.out.println("=== Staged Files ===");
-        newBlobReferences = Utils.readObject(newBlobReferencesStorage, TreeMap.class);
+        newBlobReferences = readState(newBlobReferencesStorage, TreeMap.class);
         for (String file : newBlobReferences.keySet()) {
             System.out.println(file);
         }
@@ -555,73 +607,95 @@ public class Repo implements java.io.Serializable {
 
         //Print out all files staged for removal
         System.out.println("=== Removed Files ===");
-        stageForRemoval = Utils.readObject(stageForRemovalStorage, TreeMap.class);
+        stageForRemoval = readState(stageForRemovalStorage, TreeMap.class);
         Set<String> removedFiles = stageForRemoval.keySet();
         for (String f : removedFiles) {
             System.out.println(f);
         }
         System.out.println();
 
+        WorkingTree tree = new WorkingTree(currentWorkingDir, statCache,
+                config.getInt(Config.STATUS_WORKERS, Runtime.getRuntime().availableProcessors()));
+        WorkingTree.Status changes = tree.scan(HEAD.getBlobReferences(), newBlobReferences, removedFiles);
+
         //Print out all files that have been modified and not staged
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> f : changes.unstaged.entrySet()) {
+            System.out.println(f.getKey() + " (" + f.getValue() + ")");
+        }
         System.out.println();
 
         //Print out all files that are untracked
         //files in CWD that are not tracked in current branch or staging area
         //files in CWD that are staged for removal
         System.out.println("=== Untracked Files ===");
+        for (String f : changes.untracked) {
+            System.out.println(f);
+        }
         System.out.println();
 
         System.out.println();
     }
 
     /** Prints IDs of all commits that have the given commit message,
-     * printing IDs of each commit on a separate line */
+     * printing IDs of each commit on a separate line. The commits are
+     * looked up in the message index rather than read. */
     public void find(String message) {
-        File[] allCommits = commits.listFiles();
-        boolean exists = false;
-        for (File commit : allCommits) {
-            Commit thisCommit = Utils.readObject(commit, Commit.class);
-            if (thisCommit.getCommitMessage().equals(message)) {
-                exists = true;
-                System.out.println(thisCommit.getCurrID());
-            }
-        }
-        if (exists == false) {
+        messageIndex.update(commitStore);
+        printFound(messageIndex.find(message));
+    }
+
+    /** Prints IDs of all commits whose messages contain every word of
+     * query, ignoring case, or if prefix is true, a word starting with
+     * each word of query. */
+    public void findWords(String query, boolean prefix) {
+        messageIndex.update(commitStore);
+        printFound(messageIndex.search(query, prefix));
+    }
+
+    /** Prints each of ids, the commits found by find, on a line of
+     * its own, or a message if there are none. */
+    private void printFound(Collection<String> ids) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        for (String id : ids) {
+            System.out.println(id);
+        }
     }
 
     /** Displays metadata (similar to that in log) about all commits ever made.
      * Order of commits does not matter-- simply need to display information
-     * about all commits in commits directory. */
-    @SuppressWarnings("unchecked")
+     * about all commits in the commit store. */
     public void globalLog() throws ParseException {
-        //gives the names of all files in commits-- commits are named by their currID values
-        File[] allCommits = commits.listFiles();
-        for (File commitFile : allCommits) {
-            Commit thisCommit = Utils.readObject(commitFile, Commit.class);
-
-            System.out.println("===");
-            System.out.println("commit " + thisCommit.getCurrID());
-
-            //Format timeStamp correctly to match desired output
-            SimpleDateFormat myDate = new SimpleDateFormat("Z");
-            String timeOffset = myDate.format(thisCommit.getTimeStamp());
-            System.out.println("Date: " + String.format("%1$ta %1$tb %1$td %1$tT %1$tY ", thisCommit.getTimeStamp()) + timeOffset);
-
-            System.out.println(thisCommit.getCommitMessage());
-            System.out.println();
-
+        //the log is streamed oldest first; records are decoded and
+        //formatted on the workers, and written back in the same order
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), LOG_BUFFER));
+        int workers = config.getInt(Config.LOG_WORKERS,
+                Runtime.getRuntime().availableProcessors());
+        try (Pipeline<byte[], String> entries = new Pipeline<>(workers,
+                workers * LOG_PREFETCH,
+                record -> globalLogEntry(commitStore.decode(record)), out::print)) {
+            commitStore.forEachRecord(entries::add);
+            entries.finish();
         }
+        out.flush();
+    }
+
+    /** Returns the global-log entry of commit c. */
+    private static String globalLogEntry(Commit c) {
+        return "===\ncommit " + c.getCurrID() + "\nDate: "
+                + DATE_FORMAT.format(c.getTimeStamp().toInstant()) + "\n"
+                + c.getCommitMessage() + "\n\n";
     }
 
     /** Create a new branch with the given name and point it at head node.
      * Recall: a branch is pointer to a commit object. */
     @SuppressWarnings("unchecked")
     public void branch(String branchName) {
-        HEAD = Utils.readObject(headPointer, Commit.class);
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
+        HEAD = readState(headPointer, Commit.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
         Commit newBranchPointer = HEAD;
         newBranchPointer.setName(branchName);
 
@@ -629,7 +703,7 @@ public class Repo implements java.io.Serializable {
             System.out.println("A branch with that name already exists.");
         } else {
             allBranches.put(branchName, newBranchPointer);
-            Utils.writeContents(allBranchesFile, Utils.serialize(allBranches));
+            writeState(allBranchesFile, allBranches);
         }
     }
 
@@ -639,17 +713,17 @@ public class Repo implements java.io.Serializable {
      * is stored in memory). */
     @SuppressWarnings("unchecked")
     public void rm_branch(String branchName) {
-        HEAD = Utils.readObject(headPointer, Commit.class);
+        HEAD = readState(headPointer, Commit.class);
         if (branchName.equals(HEAD.getName())) {
             System.out.println("Cannot remove the current branch.");
         }
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
         if (!allBranches.containsKey(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
         allBranches.remove(branchName);
-        Utils.writeContents(allBranchesFile, Utils.serialize(allBranches));
+        writeState(allBranchesFile, allBranches);
     }
 
     /** Checks out all files at given commit, given with
@@ -660,66 +734,35 @@ public class Repo implements java.io.Serializable {
     @SuppressWarnings("unchecked")
     public void reset(String commitID) {
         //Move the HEAD pointer to the current commit
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        Commit thisCommit = allCommits.get(commitID);
-        HEAD = Utils.readObject(headPointer, Commit.class);
+        Commit thisCommit = resolveCommit(commitID);
+        HEAD = readState(headPointer, Commit.class);
 
         //throw error case if no commit with that ID exists
         if (thisCommit == null) {
-            System.out.println("No commit with that id exists.");
             return;
         }
 
-        //Delete (rm) any files that are tracked in CWD but not reset commit
-        for (String blob : currentWorkingDir.list()) {
-            if (!thisCommit.blobReferences.containsKey(blob) && !blob.equals(".gitlet")) {
-                File toRemove = new File(currentWorkingDir.getPath() + "/" + blob);
-                Utils.restrictedDelete(toRemove);
-            }
-        }
-
-        //If there is a file in the CWD that isn't tracked in current branch, throw error:
-        //Gives list of all files in branch
-        ArrayList<String> branchFiles = new ArrayList<String>();
-        Commit currCommit = HEAD;
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        while (currCommit.getParentHash1() != null) {
-            for (String blob : currCommit.blobReferences.keySet()) {
-                branchFiles.add(blob);
-            }
-            currCommit = allCommits.get(currCommit.getParentHash1());
-        }
-
-        String[] cwdFiles = currentWorkingDir.list();
-        for (String file : cwdFiles) {
-            if (!branchFiles.contains(file) && !file.equals(".gitlet")) {
-                System.out.println("There is an untracked file in the way; " +
-                        "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-        //Check out all blobs at current branch/commit
-        for (String blob : thisCommit.blobReferences.keySet()) {
-            checkoutID(thisCommit.getCurrID(), blob);
+        //If there is a file in the CWD that isn't tracked, throw error
+        if (getUntrackedFiles(null)) {
+            System.out.println("There is an untracked file in the way; " +
+                    "delete it, or add and commit it first.");
+            return;
         }
 
+        //Delete files tracked in HEAD but not the reset commit,
+        //and write only the files whose contents differ
+        checkoutTree(HEAD, thisCommit);
 
+        //Move the current branch to the reset commit
+        String branchName = HEAD.getName();
         HEAD = thisCommit;
-        HEAD.setName(thisCommit.getName());
-        Utils.writeContents(headPointer, Utils.serialize(HEAD));
-
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
-        allBranches.replace(HEAD.getName(), thisCommit);
-        Utils.writeContents(allBranchesFile, Utils.serialize(allBranches));
-
-        //clear the staging area
-        newBlobReferences = Utils.readObject(newBlobReferencesStorage, TreeMap.class);
-        for (String f : newBlobReferences.keySet()) {
-            newBlobReferences.remove(f);
-        }
-        Utils.writeContents(newBlobReferencesStorage, Utils.serialize(newBlobReferences));
+        HEAD.setName(branchName);
+        writeState(headPointer, HEAD);
 
+        allBranches = readState(allBranchesFile, TreeMap.class);
+        allBranches.replace(branchName, thisCommit);
+        writeState(allBranchesFile, allBranches);
+        clearStagingArea();
     }
 
     /** Helper method for merge, gets split point/latest common
@@ -727,91 +770,27 @@ public class Repo implements java.io.Serializable {
      * Latest common ancestor rules:
      *  Path exists to commit from both branch heads, and is not
      *  an ancestor of any other common ancestors
+     * Found by walking the commit graph from both heads at once,
+     * latest generation first.
      * @param branchName
      * @return
      */
     @SuppressWarnings("unchecked")
     public Commit getSplitPoint(String branchName) {
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
         Commit thisBranchHead = allBranches.get(branchName);
-        HEAD = Utils.readObject(headPointer, Commit.class);
-        Commit currBranchHead = HEAD;
-
-        Commit splitPoint = null;
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-        int distanceFromHead = 0;
-        int currIterations = 0;
-        //Find all common ancestors of branch heads HEAD and branchName branchhead
-        while ((currBranchHead.getParentHash1() != null && thisBranchHead.getParentHash1() != null)
-                && !currBranchHead.getCurrID().equals(thisBranchHead.getCurrID())) {
-
-            //if parent #1 of both branches are same
-            if (currBranchHead.getParentHash1().equals(thisBranchHead.getParentHash1())) {
-                splitPoint = allCommits.get(currBranchHead.getParentHash1());
-                distanceFromHead += currIterations;
-
-                currBranchHead = allCommits.get(currBranchHead.getParentHash1());
-                thisBranchHead = allCommits.get(thisBranchHead.getParentHash1());
-
-                //if parent #2 of HEAD and parent #1 of other are same
-            } else if (currBranchHead.getParentHash2() != null
-                    && currBranchHead.getParentHash2().equals(thisBranchHead.getParentHash1())
-                    && distanceFromHead <= currIterations) {
-
-                splitPoint = allCommits.get(currBranchHead.getParentHash2());
-                distanceFromHead += 1;
-
-                currBranchHead = allCommits.get(currBranchHead.getParentHash2());
-                thisBranchHead = allCommits.get(thisBranchHead.getParentHash1());
-
-                //if parent #1 of other and parent #2 of HEAD are same
-            } else if (thisBranchHead.getParentHash2() != null
-                    && currBranchHead.getParentHash1().equals(thisBranchHead.getParentHash2())
-                    && distanceFromHead <= currIterations) {
-                splitPoint = allCommits.get(thisBranchHead.getParentHash2());
-                distanceFromHead += 1;
-
-                currBranchHead = allCommits.get(currBranchHead.getParentHash1());
-                thisBranchHead = allCommits.get(thisBranchHead.getParentHash2());
-            } else {
-                distanceFromHead += 1;
-                currBranchHead = allCommits.get(currBranchHead.getParentHash1());
-                thisBranchHead = allCommits.get(thisBranchHead.getParentHash1());
-            }
-            currIterations += 1;
-        }
-
-        if (thisBranchHead == currBranchHead) {
-            splitPoint = thisBranchHead;
-            return splitPoint;
-        }
-
-        Commit initialCommit = null;
-        Collection<Commit> commits = allCommits.values();
-        for (Commit c : commits) {
-            if (c.getCommitMessage().equals("initial commit")) {
-                initialCommit = c;
-                break;
-            }
-        }
-
-        if (splitPoint == null && currBranchHead == initialCommit) {
-            if (allCommits.get(thisBranchHead.getParentHash1()) == initialCommit) {
-                splitPoint = initialCommit;
-                return splitPoint;
-            }
-        } else if (splitPoint == null && thisBranchHead == initialCommit) {
-            if (allCommits.get(currBranchHead.getParentHash1()) == initialCommit) {
-                splitPoint = initialCommit;
-                return splitPoint;
-            }
-        }
+        HEAD = readState(headPointer, Commit.class);
 
-        return splitPoint;
+        commitGraph.update(commitStore);
+        return commitStore.get(commitGraph.mergeBase(HEAD.getCurrID(),
+                thisBranchHead.getCurrID()));
     }
 
     /** Helper method for merge, to access all files in
-     * a given branch since the split point.
+     * a given branch since the split point. Where commits on the
+     * way disagree, the version nearest the split point is kept.
+     * The commits are visited from the split point onwards, so that
+     * subtrees already visited through an earlier commit are skipped.
      * @param splitPoint
      * @param branch
      * @return
@@ -819,11 +798,9 @@ public class Repo implements java.io.Serializable {
     @SuppressWarnings("unchecked")
     public TreeMap<String, String> getBranchFiles(Commit splitPoint, Commit branch) {
         TreeMap<String, String> allFiles = new TreeMap<String, String>();
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
+        ArrayList<Commit> path = new ArrayList<>();
         while (!branch.getCurrID().equals(splitPoint.getCurrID())) {
-            for (String fileName : branch.blobReferences.keySet()) {
-                allFiles.put(fileName, branch.blobReferences.get(fileName));
-            }
+            path.add(branch);
             //if branch has two parents, and one is split point, go to split point
             if (branch.getParentHash2() != null
                     && branch.getParentHash1().equals(splitPoint.getCurrID())) {
@@ -834,10 +811,20 @@ public class Repo implements java.io.Serializable {
                 branch = splitPoint;
             //otherwise, go to branch's parent
             } else {
-                branch = allCommits.get(branch.getParentHash1());
+                branch = commitStore.get(branch.getParentHash1());
             }
         }
 
+        //subtrees already added, by path and hash
+        HashSet<String> seenTrees = new HashSet<>();
+        for (int i = path.size() - 1; i >= 0; i -= 1) {
+            Commit c = path.get(i);
+            if (c.getTree() == null) {
+                c.getBlobReferences().forEach(allFiles::putIfAbsent);
+            } else if (seenTrees.add(c.getTree())) {
+                trees.addFiles(c.getTree(), "", allFiles, seenTrees);
+            }
+        }
         return allFiles;
     }
 
@@ -845,61 +832,34 @@ public class Repo implements java.io.Serializable {
      * content of files that are in conflict,
      * where fileName is the name of the file in conflict,
      * and branchName is the name of the branch being merged.
+     * The current branch's, given branch's and split point's versions
+     * are read from the object store and merged line by line, so
+     * changes to different parts of the file are both kept and only
+     * overlapping changes are marked as conflicts. A version that is
+     * absent counts as empty. Returns true iff conflicts remain.
      * @param branchName
      * @param fileName
      */
     @SuppressWarnings("unchecked")
-    public void writeConflictFile(String branchName, String fileName, Commit splitPoint) throws IOException{
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
+    public boolean writeConflictFile(String branchName, String fileName, Commit splitPoint) throws IOException{
+        allBranches = readState(allBranchesFile, TreeMap.class);
         Commit toMergeBranch = allBranches.get(branchName);
-        File conflictFile = new File(currentWorkingDir+"/"+fileName);
-
-        File copyCurrBranchFile = new File(currentWorkingDir+"/"+fileName+".currBranchCopy");
-        BufferedReader currBranchFileReader =
-                new BufferedReader(new FileReader(conflictFile));
-        String currBranchFileContents = "";
-        currBranchFileContents += currBranchFileReader.readLine();
-        currBranchFileReader.close();
-
-        Commit temp = toMergeBranch;
-        File copyOtherBranchFile = new File(currentWorkingDir+"/"+fileName);
-        String otherBranchFileContents = "";
-        for (String file : temp.blobReferences.keySet()) {
-            if (file.equals(fileName)) {
-                Commit tempHead = HEAD;
-                checkoutID(temp.getCurrID(), fileName);
-                HEAD = tempHead;
-                BufferedReader otherBranchFileReader =
-                        new BufferedReader(new FileReader(copyOtherBranchFile));
-                otherBranchFileContents += otherBranchFileReader.readLine();
-                otherBranchFileReader.close();
-            }
-        }
-
-        Utils.restrictedDelete(copyCurrBranchFile);
-        Utils.restrictedDelete(copyOtherBranchFile);
-
-        //clear the contents of conflict file
-        File conflictFileFinal = new File(currentWorkingDir+"/"+fileName);
-        BufferedWriter bw = new BufferedWriter(new FileWriter(conflictFileFinal));
-        bw.write("<<<<<<< HEAD");
-        bw.write("\n");
-        if (!currBranchFileContents.equals("")) {
-            bw.write(currBranchFileContents);
-        }
-        bw.write("\n");
-        bw.write("=======");
-        bw.write("\n");
-        if (!otherBranchFileContents.equals("")) {
-            bw.write(otherBranchFileContents);
-            bw.write("\n");
-        }
-        bw.write(">>>>>>>");
-        bw.write("\n");
-        bw.close();
+        Commit currBranch = readState(headPointer, Commit.class);
+
+        ThreeWayMerge merged = new ThreeWayMerge(
+                blobContents(splitPoint.getBlobReferences().get(fileName)),
+                blobContents(currBranch.getBlobReferences().get(fileName)),
+                blobContents(toMergeBranch.getBlobReferences().get(fileName)),
+                config.diffAlgorithm());
+        Utils.writeContents(new File(currentWorkingDir, fileName), merged.contents());
+        return merged.conflicts() > 0;
+    }
 
-        }
+    /** Returns the contents of the blob with hash BLOBHASH, or no
+     * bytes if BLOBHASH is null. */
+    private byte[] blobContents(String blobHash) {
+        return blobHash == null ? new byte[0] : objectStore.get(blobHash);
+    }
 
     /** Helper method for merge-- gets untracked files.
      * A file is untracked if it is not tracked in either
@@ -915,26 +875,16 @@ public class Repo implements java.io.Serializable {
             }
         }
 
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
-
-        //return an arraylist of all the hashes of files that have been committed
-        Collection<Commit> commits = allCommits.values();
-        ArrayList<String> committedFileHashes = new ArrayList<String>();
-        for (Commit c : commits) {
-            Collection<String> hashes = c.blobReferences.values();
-            for (String s : hashes) {
-                committedFileHashes.add(s);
-            }
-        }
+        allBranches = readState(allBranchesFile, TreeMap.class);
 
+        //bring the set of all committed blob hashes up to date
+        blobSet.update(commitStore);
 
         for (String file : cwdFiles) {
              {
                  File tempFile = new File(currentWorkingDir+"/"+file);
-                 Blob tempBlob = new Blob(tempFile);
-                 String tempBlobHash = tempBlob.getHash();
-                 if (!committedFileHashes.contains(tempBlobHash)) {
+                 String tempBlobHash = statCache.hash(tempFile);
+                 if (!blobSet.contains(tempBlobHash)) {
                      return true;
                  }
              }
@@ -946,26 +896,25 @@ public class Repo implements java.io.Serializable {
      * @param branchName */
     @SuppressWarnings("unchecked")
     public void merge(String branchName) throws IOException {
-        stageForRemoval = Utils.readObject(stageForRemovalStorage, TreeMap.class);
-        newBlobReferences = Utils.readObject(newBlobReferencesStorage, TreeMap.class);
+        stageForRemoval = readState(stageForRemovalStorage, TreeMap.class);
+        newBlobReferences = readState(newBlobReferencesStorage, TreeMap.class);
         if (!stageForRemoval.keySet().isEmpty() || !newBlobReferences.keySet().isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return;
         }
 
-        allBranches = Utils.readObject(allBranchesFile, TreeMap.class);
+        allBranches = readState(allBranchesFile, TreeMap.class);
         if (!allBranches.containsKey(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
 
-        Commit currBranch = Utils.readObject(headPointer, Commit.class);
+        Commit currBranch = readState(headPointer, Commit.class);
         if (currBranch.getName().equals(branchName)) {
             System.out.println("Cannot merge a branch with itself.");
             return;
         }
 
-        allCommits = Utils.readObject(allCommitsFile, TreeMap.class);
 
         ArrayList<String> beenTampered = new ArrayList<>();
         if (getUntrackedFiles(branchName)) {
@@ -975,67 +924,61 @@ public class Repo implements java.io.Serializable {
         }
 
         Commit splitPoint = getSplitPoint(branchName);
-        Commit otherParent = allCommits.get(allBranches.get(branchName).getParentHash1());
-        if (currBranch.getCurrID().equals(otherParent.getCurrID())) {
+        if (splitPoint.getCurrID().equals(allBranches.get(branchName).getCurrID())) {
+            System.out.println("Given branch is an " +
+                    "ancestor of the current branch.");
+            return;
+        }
+        if (splitPoint.getCurrID().equals(currBranch.getCurrID())) {
             checkoutBranch(allBranches.get(branchName).getName());
             System.out.println("Current branch fast-forwarded.");
             return;
         }
-        if (splitPoint == null) {
-            Commit temp = currBranch;
-            while (temp.getParentHash1() != null) {
-                if (temp.getCurrID().equals(allBranches.get(branchName).getCurrID())) {
-                    System.out.println("Given branch is an " +
-                            "ancestor of the current branch.");
-                    return;
-                }
-                temp = allCommits.get(temp.getParentHash1());
-            }
-        }
         TreeMap<String, String> currBranchFiles = getBranchFiles(splitPoint, currBranch);
         Commit toMergeBranch = allBranches.get(branchName);
         TreeMap<String, String> toMergeBranchFiles = getBranchFiles(splitPoint, toMergeBranch);
 
-        for (String fileName : splitPoint.blobReferences.keySet()) {
+        for (String fileName : splitPoint.getBlobReferences().keySet()) {
             //if the file is in both branches
             if (currBranchFiles.containsKey(fileName)
                     && toMergeBranchFiles.containsKey(fileName)) {
                 //if file has been modified in other, but not HEAD
-                if (!toMergeBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName))
-                    && currBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName))) {
+                if (!toMergeBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName))
+                    && currBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName))) {
                     //checkout other's version
                     Commit temp = toMergeBranch;
                     while (!temp.getCurrID().equals(splitPoint.getCurrID())) {
-                        if (temp.blobReferences.containsKey(fileName)) {
+                        if (temp.getBlobReferences().containsKey(fileName)) {
                             Commit tempHead = HEAD;
                             checkoutID(temp.getCurrID(),fileName);
                             HEAD = tempHead;
-                            Utils.writeContents(headPointer, Utils.serialize(HEAD));
+                            writeState(headPointer, HEAD);
                             add(fileName);
                             HEAD = tempHead;
                             break;
                         } else {
-                            temp = allCommits.get(toMergeBranch.getParentHash1());
+                            temp = commitStore.get(toMergeBranch.getParentHash1());
                         }
                     }
                 }
 
                 //if file has been modified in HEAD
-                else if (toMergeBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName))
-                        && !currBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName))) {
+                else if (toMergeBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName))
+                        && !currBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName))) {
                     //do nothing, leave the file as is
                 }
 
                 //if file has been modified in both
-                else if (!toMergeBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName))
-                        && !currBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName))) {
+                else if (!toMergeBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName))
+                        && !currBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName))) {
                     //modified in same way (hash values are same)
                     if (toMergeBranchFiles.get(fileName).equals(currBranchFiles.get(fileName))) {
                         //do nothing
                     } else {
                         // modified in different ways, files are in conflict
-                        System.out.println("Encountered a merge conflict.");
-                        writeConflictFile(branchName, fileName, splitPoint);
+                        if (writeConflictFile(branchName, fileName, splitPoint)) {
+                            System.out.println("Encountered a merge conflict.");
+                        }
                         Commit tempHead = HEAD;
                         add(fileName);
                         HEAD = tempHead;
@@ -1048,10 +991,11 @@ public class Repo implements java.io.Serializable {
                 if (!toMergeBranchFiles.containsKey(fileName)) {
                     //FILES IN CONFLICT: Contents of one file changed, and other deleted
                     if (currBranchFiles.containsKey(fileName)
-                            && !currBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName)))
+                            && !currBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName)))
                     {
-                        System.out.println("Encountered a merge conflict.");
-                        writeConflictFile(branchName, fileName, splitPoint);
+                        if (writeConflictFile(branchName, fileName, splitPoint)) {
+                            System.out.println("Encountered a merge conflict.");
+                        }
                         Commit tempHead = HEAD;
                         add(fileName);
                         HEAD = tempHead;
@@ -1059,9 +1003,9 @@ public class Repo implements java.io.Serializable {
                     } else {
                         //stage file for removal (won't be tracked in next commit)
                         //If file exists in staging area, remove it from staging area
-                        stageForRemoval = Utils.readObject(stageForRemovalStorage, TreeMap.class);
+                        stageForRemoval = readState(stageForRemovalStorage, TreeMap.class);
                         stageForRemoval.put(fileName, "");
-                        Utils.writeContents(stageForRemovalStorage, Utils.serialize(stageForRemoval));
+                        writeState(stageForRemovalStorage, stageForRemoval);
 
                         //remove file from CWD
                         File toRemove = new File(currentWorkingDir.getPath() + "/" + fileName);
@@ -1072,10 +1016,11 @@ public class Repo implements java.io.Serializable {
                 else if (!currBranchFiles.containsKey(fileName)) {
                     //FILES IN CONFLICT: Contents of one file changed, and other deleted
                     if (toMergeBranchFiles.containsKey(fileName)
-                            && !toMergeBranchFiles.get(fileName).equals(splitPoint.blobReferences.get(fileName)))
+                            && !toMergeBranchFiles.get(fileName).equals(splitPoint.getBlobReferences().get(fileName)))
                     {
-                        System.out.println("Encountered a merge conflict.");
-                        writeConflictFile(branchName, fileName, splitPoint);
+                        if (writeConflictFile(branchName, fileName, splitPoint)) {
+                            System.out.println("Encountered a merge conflict.");
+                        }
                         Commit tempHead = HEAD;
                         add(fileName);
                         HEAD = tempHead;
@@ -1088,15 +1033,16 @@ public class Repo implements java.io.Serializable {
 
         //if file is in HEAD, but not splitPoint, or other
         for (String fileName : currBranchFiles.keySet()) {
-            if (!splitPoint.blobReferences.containsKey(fileName)
+            if (!splitPoint.getBlobReferences().containsKey(fileName)
                     && !toMergeBranchFiles.containsKey(fileName)) {
                 //do nothing, keep file as is
             } else if (toMergeBranchFiles.containsKey(fileName) &&
                     !currBranchFiles.get(fileName).equals(toMergeBranchFiles.get(fileName))
                     && !beenTampered.contains(fileName)) {
                 //FILES IN CONFLICT: File absent in split point, and has different contents in both branches
-                System.out.println("Encountered a merge conflict.");
-                writeConflictFile(branchName, fileName, splitPoint);
+                if (writeConflictFile(branchName, fileName, splitPoint)) {
+                    System.out.println("Encountered a merge conflict.");
+                }
                 Commit tempHead = HEAD;
                 add(fileName);
                 HEAD = tempHead;
@@ -1106,22 +1052,22 @@ public class Repo implements java.io.Serializable {
 
         //if file is in other, but not splitPoint, or HEAD
         for (String fileName : toMergeBranchFiles.keySet()) {
-            if (!splitPoint.blobReferences.containsKey(fileName)
+            if (!splitPoint.getBlobReferences().containsKey(fileName)
                     && !currBranchFiles.containsKey(fileName)) {
                 //checkout file
                 Commit temp = toMergeBranch;
                 while (!temp.getCurrID().equals(splitPoint.getCurrID())) {
-                    if (temp.blobReferences.containsKey(fileName)) {
+                    if (temp.getBlobReferences().containsKey(fileName)) {
                         Commit tempHead = HEAD;
                         checkoutID(temp.getCurrID(),fileName);
                         HEAD = tempHead;
-                        Utils.writeContents(headPointer, Utils.serialize(HEAD));
+                        writeState(headPointer, HEAD);
                         //stage file for addition
                         add(fileName);
                         HEAD = tempHead;
                         break;
                     } else {
-                        temp = allCommits.get(toMergeBranch.getParentHash1());
+                        temp = commitStore.get(toMergeBranch.getParentHash1());
                     }
                 }
 
@@ -1134,20 +1080,162 @@ public class Repo implements java.io.Serializable {
 
         String tempID = allBranches.get(branchName).getCurrID();
         String tempName = currBranch.getName();
-        Commit tempHead = HEAD;
 
         TreeMap<String, Commit> tempTree = allBranches;
 
-        commit("Merged " + branchName + " into " + currBranch.getName() + ".");
+        commit("Merged " + branchName + " into " + currBranch.getName() + ".", tempID);
 
         HEAD.setName(tempName);
         allBranches = tempTree;
         allBranches.put(HEAD.getName(), HEAD);
-        Utils.writeContents(allBranchesFile, Utils.serialize(allBranches));
+        writeState(allBranchesFile, allBranches);
+        writeState(headPointer, HEAD);
+    }
+
+    /** Writes out any cached state that changed while running
+     * a command, as one transaction of the journal. Called once after
+     * each command, or once for a run of commands, which then write
+     * each state file once. */
+    public void flush() {
+        journal.commit(pendingState);
+        pendingState.clear();
+        statCache.save();
+    }
 
-        HEAD.setParentHash1(tempHead.getCurrID());
-        HEAD.setParentHash2(tempID);
-        Utils.writeContents(headPointer, Utils.serialize(HEAD));
+    /** Discards the changes to state files made since the last flush,
+     * as when a command fails part way through. */
+    public void discard() {
+        pendingState.clear();
+    }
+
+    /** Returns a copy of the changes to state files made since the last
+     * flush, to be handed to rollback() if the next command fails. */
+    Map<File, byte[]> mark() {
+        return new LinkedHashMap<>(pendingState);
+    }
+
+    /** Discards the changes to state files made since MARK was returned
+     * by mark(), keeping those made before it. */
+    void rollback(Map<File, byte[]> mark) {
+        pendingState = new LinkedHashMap<>(mark);
+    }
+
+    /** Returns the object of class TYPE last written to the state file
+     * FILE, which may still be pending. Files written by Java
+     * serialization, as older versions did, are read as well. */
+    private <T extends Serializable> T readState(File file, Class<T> type) {
+        byte[] pending = pendingState.get(file);
+        if (pending == null) {
+            pending = Utils.readContents(file);
+        }
+        try {
+            return type.cast(CommitCodec.decodeState(pending));
+        } catch (ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes OBJ to the state file FILE in the format of CommitCodec
+     * at the next flush. */
+    private void writeState(File file, Serializable obj) {
+        pendingState.put(file, CommitCodec.encodeState(obj));
+    }
+
+    /** Prints the value of setting key, or sets it to value
+     * if value is not null. */
+    public void config(String key, String value) {
+        if (value == null) {
+            System.out.println(config.get(key, ""));
+        } else {
+            config.set(key, value);
+            boolean compressed = config.getBoolean(Config.COMPRESSION, false);
+            objectStore.setCompressed(compressed);
+            commitStore.setCompressed(compressed);
+            commitStore.setCacheSize(
+                    config.getInt(Config.COMMIT_CACHE, CommitCache.DEFAULT_CAPACITY));
+        }
+    }
+
+    /** Turns on compression of new objects, then compresses all
+     * existing blobs and commits in place and reports the space saved. */
+    public void compress() {
+        config.set(Config.COMPRESSION, "true");
+        objectStore.setCompressed(true);
+        commitStore.setCompressed(true);
+        long saved = objectStore.compressAll() + commitStore.compressAll();
+        System.out.println("Compressed objects; saved " + saved + " bytes.");
+    }
+
+    /** Moves all committed blobs into a single pack file, storing
+     * successive versions of each file as line deltas against each
+     * other, and reports the space saved. */
+    public void pack() {
+        //versions of each file and directory, in the order in which they
+        //were committed; only those differing from the commit before are
+        //visited, skipping the subtrees the two share
+        TreeMap<String, LinkedHashSet<String>> histories = new TreeMap<>();
+        BiConsumer<String, String> addVersion = (name, hash) -> {
+            if (hash != null) {
+                histories.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(hash);
+            }
+        };
+        String previousTree = null;
+        for (String id : commitStore.ids()) {
+            Commit c = commitStore.get(id);
+            if (c.getTree() == null) {
+                c.getBlobReferences().forEach(addVersion);
+            } else {
+                trees.diff(previousTree, c.getTree(), addVersion, addVersion);
+            }
+            previousTree = c.getTree();
+        }
+        ObjectStore.PackSummary summary = objectStore.pack(histories.values(),
+                config.diffAlgorithm());
+        System.out.println("Packed " + summary.objects + " objects ("
+                + summary.deltas + " as deltas): " + summary.bytesBefore
+                + " bytes -> " + summary.bytesAfter + " bytes.");
+    }
+
+    /** Adds the commits described by the stream IN, in the format read
+     * by FastImport, to the repository. Blobs are written as they are
+     * read; the commits are stored, and the branches, HEAD and indexes
+     * updated, once at the end. The working directory is left alone.
+     * Nothing is committed if the stream is malformed. */
+    @SuppressWarnings("unchecked")
+    public void fastImport(InputStream in) throws IOException {
+        allBranches = readState(allBranchesFile, TreeMap.class);
+        HEAD = readState(headPointer, Commit.class);
+        FastImport importer = new FastImport(objectStore, commitStore,
+                allBranches, config.diffAlgorithm());
+        List<Commit> imported;
+        try {
+            imported = importer.read(in);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return;
+        }
+        //the imported commits add only the blobs the import wrote to
+        //those of the commits before them
+        blobSet.update(commitStore);
+        commitStore.putAll(imported);
+        blobSet.cover(commitStore, importer.blobHashes());
+        Map<String, Commit> byId = new HashMap<>();
+        for (Commit c : imported) {
+            byId.put(c.getCurrID(), c);
+        }
+        Function<String, Commit> commits = id -> byId.containsKey(id)
+                ? byId.get(id) : commitStore.get(id);
+        commitGraph.update(commitStore, commits);
+        messageIndex.update(commitStore, commits);
+
+        Commit head = allBranches.get(HEAD.getName());
+        if (!head.getCurrID().equals(HEAD.getCurrID())) {
+            HEAD = head;
+            writeState(headPointer, HEAD);
+        }
+        writeState(allBranchesFile, allBranches);
+        System.out.println("Imported " + imported.size() + " commits and "
+                + importer.blobs() + " blobs.");
     }
 
     /** Accessor method for CWD directory. */
@@ -1155,9 +1243,9 @@ public class Repo implements java.io.Serializable {
         return currentWorkingDir;
     }
 
-    /** Accessor method for allCommits. */
-    public TreeMap<String, Commit> getAllCommits() {
-        return allCommits;
+    /** Accessor method for the commit store. */
+    CommitStore getCommitStore() {
+        return commitStore;
     }
 
     /** Accessor method for HEAD. */
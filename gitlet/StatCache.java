@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Cache of the blob hashes of files in the working directory, by
+ * their paths relative to it. Next to each hash it records the size, modification time, change
+ * time and inode number the file had when it was hashed. As long as
+ * all four are unchanged the file's contents are taken to be unchanged
+ * too, and the recorded hash is returned without reading the file.
+ * A file modified within RACY_NANOS of being hashed is not recorded,
+ * since a later change within the same timestamp granularity would go
+ * unnoticed.
+ * @author Eesha Thaker
+ */
+class StatCache {
+
+    /** Version of the cache file format. */
+    private static final int VERSION = 2;
+
+    /** Files modified less than this long before they were hashed are
+     * not recorded. */
+    static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** The stat data of a file, and the blob hash of its contents. */
+    private static class Entry {
+        /** Size in bytes. */
+        final long size;
+        /** Modification time, in nanoseconds since the epoch. */
+        final long mtime;
+        /** Change time (or creation time where there is none), in
+         * nanoseconds since the epoch. */
+        final long ctime;
+        /** Inode number, or another stand-in for the file's identity. */
+        final long inode;
+        /** Blob hash of the file. */
+        String hash;
+
+        /** An entry for a file with the given stat data. */
+        Entry(long size, long mtime, long ctime, long inode) {
+            this.size = size;
+            this.mtime = mtime;
+            this.ctime = ctime;
+            this.inode = inode;
+        }
+
+        /** Returns true iff OTHER has the same stat data as this. */
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && ctime == other.ctime && inode == other.inode;
+        }
+    }
+
+    /** File in which the cache is persisted. */
+    private final File cacheFile;
+
+    /** The working directory whose files are cached. */
+    private final Path workTree;
+
+    /** Paths relative to workTree mapped to their entries. Null until
+     * first loaded. */
+    private Map<String, Entry> entries;
+
+    /** True iff entries has changed since it was loaded or saved. */
+    private boolean dirty;
+
+    /** A stat cache kept in the gitlet directory GITLETDIR. */
+    StatCache(File gitletDir) {
+        this.cacheFile = Utils.join(gitletDir, "statCache");
+        this.workTree = gitletDir.getAbsoluteFile().getParentFile().toPath().normalize();
+    }
+
+    /** Returns the blob hash of FILE, reading and hashing the file only
+     * if its stat data differs from that recorded for it. May be called
+     * from several threads at once; files are statted and hashed outside
+     * the cache's lock. */
+    String hash(File file) {
+        String path = path(file);
+        Entry cached;
+        synchronized (this) {
+            load();
+            cached = entries.get(path);
+        }
+        Entry now = stat(file);
+        if (cached != null && now != null && cached.sameStat(now)) {
+            return cached.hash;
+        }
+        String hash = Blob.hash(file);
+        synchronized (this) {
+            record(path, now, hash);
+        }
+        return hash;
+    }
+
+    /** Returns the number of files recorded. */
+    synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    /** Writes the cache to disk if it has changed. */
+    synchronized void save() {
+        if (!dirty || !cacheFile.getParentFile().isDirectory()) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(cacheFile), Utils.CHUNK_SIZE))) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.ctime);
+                out.writeLong(entry.inode);
+                out.write(Utils.fromHex(entry.hash));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+    }
+
+    /** Records under PATH that a file with stat data STAT has blob hash
+     * HASH, unless STAT is missing or too recent to be trusted. */
+    private void record(String path, Entry stat, String hash) {
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        if (stat == null || now - stat.mtime < RACY_NANOS) {
+            if (entries.remove(path) != null) {
+                dirty = true;
+            }
+            return;
+        }
+        stat.hash = hash;
+        entries.put(path, stat);
+        dirty = true;
+    }
+
+    /** Returns the path of FILE relative to the working directory, with
+     * / as separator, under which it is cached. */
+    private String path(File file) {
+        Path relative = workTree.relativize(file.getAbsoluteFile().toPath().normalize());
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Returns the stat data of FILE, or null if it cannot be read. */
+    private static Entry stat(File file) {
+        Path path = file.toPath();
+        try {
+            Map<String, Object> unix = Files.readAttributes(path,
+                    "unix:size,lastModifiedTime,ctime,ino", LinkOption.NOFOLLOW_LINKS);
+            return new Entry((Long) unix.get("size"),
+                    nanos((FileTime) unix.get("lastModifiedTime")),
+                    nanos((FileTime) unix.get("ctime")), (Long) unix.get("ino"));
+        } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+            try {
+                BasicFileAttributes basic = Files.readAttributes(path,
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                Object key = basic.fileKey();
+                return new Entry(basic.size(), nanos(basic.lastModifiedTime()),
+                        nanos(basic.creationTime()), key == null ? 0 : key.hashCode());
+            } catch (IOException excp2) {
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns TIME in nanoseconds since the epoch. */
+    private static long nanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Reads the cache from disk, if that has not been done yet. A
+     * missing or unreadable cache is treated as empty. */
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(cacheFile), Utils.CHUNK_SIZE))) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            byte[] hash = new byte[Utils.UID_LENGTH / 2];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong(),
+                        in.readLong(), in.readLong());
+                in.readFully(hash);
+                entry.hash = Utils.toHex(hash);
+                entries.put(path, entry);
+            }
+        } catch (EOFException excp) {
+            entries.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
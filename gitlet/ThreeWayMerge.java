@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line-level three-way merge of two versions of a file that both
+ * descend from a common base version, in the manner of diff3.
+ * Each side is compared with the base using Diff. Base lines that both
+ * sides kept unchanged, in place, divide the three versions into
+ * stable chunks, copied as they are, and unstable chunks in between.
+ * An unstable chunk changed by only one side, or by both in the same
+ * way, takes that change; one changed differently by both sides is a
+ * conflict, and only that chunk is wrapped in conflict markers. Files
+ * that are not text are merged as a single conflict.
+ * @author Eesha Thaker
+ */
+class ThreeWayMerge {
+
+    /** Marks the start of the current branch's side of a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+
+    /** Separates the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marks the end of the given branch's side of a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    /** The merged contents. */
+    private final StringBuilder result = new StringBuilder();
+
+    /** Number of conflicting chunks. */
+    private int conflicts;
+
+    /** Merges OURS and THEIRS, the contents of two versions of a file
+     * descending from BASE, comparing them with BASE using ALGORITHM. */
+    ThreeWayMerge(byte[] base, byte[] ours, byte[] theirs,
+                  Diff.Algorithm algorithm) {
+        String baseText = Delta.text(base);
+        String oursText = Delta.text(ours);
+        String theirsText = Delta.text(theirs);
+        if (baseText == null || oursText == null || theirsText == null) {
+            conflict(Delta.lines(new String(ours, StandardCharsets.UTF_8)),
+                     Delta.lines(new String(theirs, StandardCharsets.UTF_8)));
+        } else {
+            merge(Delta.lines(baseText), Delta.lines(oursText),
+                  Delta.lines(theirsText), algorithm);
+        }
+    }
+
+    /** Returns the merged contents. */
+    byte[] contents() {
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the number of conflicting chunks in the merge. */
+    int conflicts() {
+        return conflicts;
+    }
+
+    /** Appends the merge of OURS and THEIRS, which descend from BASE,
+     * to the result. */
+    private void merge(List<String> base, List<String> ours,
+                       List<String> theirs, Diff.Algorithm algorithm) {
+        int[] oursAt = matches(base, ours, algorithm);
+        int[] theirsAt = matches(base, theirs, algorithm);
+        int i = 0, o = 0, t = 0;
+        while (i < base.size() || o < ours.size() || t < theirs.size()) {
+            if (i < base.size() && oursAt[i] == o && theirsAt[i] == t) {
+                result.append(base.get(i));
+                i += 1;
+                o += 1;
+                t += 1;
+                continue;
+            }
+            int j = i;
+            while (j < base.size() && (oursAt[j] < 0 || theirsAt[j] < 0)) {
+                j += 1;
+            }
+            int oEnd = j < base.size() ? oursAt[j] : ours.size();
+            int tEnd = j < base.size() ? theirsAt[j] : theirs.size();
+            resolve(base.subList(i, j), ours.subList(o, oEnd),
+                    theirs.subList(t, tEnd));
+            i = j;
+            o = oEnd;
+            t = tEnd;
+        }
+    }
+
+    /** Appends the resolution of an unstable chunk whose versions in the
+     * base and on each side are BASE, OURS and THEIRS. */
+    private void resolve(List<String> base, List<String> ours,
+                         List<String> theirs) {
+        if (ours.equals(base) || ours.equals(theirs)) {
+            theirs.forEach(result::append);
+        } else if (theirs.equals(base)) {
+            ours.forEach(result::append);
+        } else {
+            conflict(ours, theirs);
+        }
+    }
+
+    /** Appends a conflict between OURS and THEIRS. */
+    private void conflict(List<String> ours, List<String> theirs) {
+        conflicts += 1;
+        result.append(OURS_MARKER);
+        appendLines(ours);
+        result.append(SEPARATOR);
+        appendLines(theirs);
+        result.append(THEIRS_MARKER);
+    }
+
+    /** Appends LINES, ending the last with a newline if it lacks one. */
+    private void appendLines(List<String> lines) {
+        lines.forEach(result::append);
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            result.append('\n');
+        }
+    }
+
+    /** Returns, for each line of BASE, the position of the line of
+     * OTHER it is matched with by Diff using ALGORITHM, or -1. */
+    private static int[] matches(List<String> base, List<String> other,
+                                 Diff.Algorithm algorithm) {
+        Diff diff = new Diff();
+        diff.setAlgorithm(algorithm);
+        diff.setSequences(base, other);
+        int[] common = diff.commonSubsequence();
+        int[] result = new int[base.size()];
+        Arrays.fill(result, -1);
+        for (int k = 0; k < common.length; k += 3) {
+            for (int n = 0; n < common[k + 2]; n += 1) {
+                result[common[k] + n] = common[k + 1] + n;
+            }
+        }
+        return result;
+    }
+}
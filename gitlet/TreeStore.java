@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/** Store of trees, the directories of the files of commits.
+ * A tree lists the entries of one directory, each a file mapped to its
+ * blob hash or a subdirectory mapped to the hash of its own tree, so a
+ * commit need only name the tree of its top directory. A tree is kept
+ * in the object store as text, one line per entry in name order:
+ * <pre>
+ * HASH NAME
+ * </pre>
+ * where NAME ends in SEPARATOR for a subdirectory. The hash of a tree
+ * is the SHA-1 hash of its text, so equal directories have equal
+ * hashes and are stored once: a commit that changes one file writes
+ * new trees only for the directories on that file's path and shares
+ * the rest with its parent, and comparing two commits skips every pair
+ * of subtrees whose hashes are equal without reading them. Being text
+ * with a line per entry, successive versions of a tree pack well as
+ * line deltas. The most recently read trees are cached.
+ * @author Eesha Thaker
+ */
+class TreeStore {
+
+    /** Separates the directories in a file's path, and ends the names
+     * of subdirectories in a tree. */
+    static final String SEPARATOR = "/";
+
+    /** Number of trees kept in the cache. */
+    static final int CACHE_SIZE = 1 << 12;
+
+    /** Receives each tree written. */
+    interface Writer {
+        /** Stores CONTENTS, the tree of the directory DIR ("" for the
+         * top directory, otherwise ending in SEPARATOR), under HASH. */
+        void write(String dir, String hash, byte[] contents);
+    }
+
+    /** Returns the contents of a stored tree, given its hash. */
+    private final Function<String, byte[]> reader;
+
+    /** Where new trees are written. */
+    private final Writer writer;
+
+    /** Entries of recently read or written trees, by hash, least
+     * recently used first. */
+    private final LinkedHashMap<String, TreeMap<String, String>> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, TreeMap<String, String>> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    /** A store keeping its trees in STORE. */
+    TreeStore(ObjectStore store) {
+        this(store::get, (dir, hash, contents) -> store.put(hash, contents));
+    }
+
+    /** A store reading trees through READER and writing new ones to
+     * WRITER. */
+    TreeStore(Function<String, byte[]> reader, Writer writer) {
+        this.reader = reader;
+        this.writer = writer;
+    }
+
+    /** Returns the hash of the tree holding FILES, a map of file paths
+     * to blob hashes, writing each of its trees. */
+    String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns the hash of the tree BASE (null for an empty tree) with
+     * CHANGES applied, each a file path mapped to its new blob hash, or
+     * to null to remove the file. Only the trees of directories holding
+     * a changed path are rebuilt and written; directories left empty are
+     * dropped. */
+    String update(String base, Map<String, String> changes) {
+        return update("", base, changes);
+    }
+
+    /** Returns the hash of the tree of directory DIR after applying
+     * CHANGES, keyed by paths relative to DIR, to its tree BASE, or null
+     * if DIR is not the top directory and is left empty. */
+    private String update(String dir, String base, Map<String, String> changes) {
+        TreeMap<String, String> entries =
+                base == null ? new TreeMap<>() : new TreeMap<>(entries(base));
+        Map<String, Map<String, String>> subdirs = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int end = path.indexOf(SEPARATOR);
+            if (end < 0) {
+                put(entries, path, change.getValue());
+            } else {
+                subdirs.computeIfAbsent(path.substring(0, end + 1), k -> new HashMap<>())
+                        .put(path.substring(end + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> subdir : subdirs.entrySet()) {
+            String name = subdir.getKey();
+            put(entries, name, update(dir + name, entries.get(name), subdir.getValue()));
+        }
+        if (entries.isEmpty() && !dir.isEmpty()) {
+            return null;
+        }
+        byte[] contents = encode(entries);
+        String hash = Utils.sha1(contents);
+        if (!hash.equals(base)) {
+            writer.write(dir, hash, contents);
+            synchronized (cache) {
+                cache.put(hash, entries);
+            }
+        }
+        return hash;
+    }
+
+    /** Returns the files of tree TREE, each path mapped to its blob
+     * hash. */
+    TreeMap<String, String> files(String tree) {
+        TreeMap<String, String> result = new TreeMap<>();
+        addFiles(tree, "", result, null);
+        return result;
+    }
+
+    /** Adds to RESULT each file of tree TREE that it lacks, prefixing
+     * its path with PREFIX. If SEEN is not null, it holds subtrees
+     * already added, each as its path followed by its hash ("" for the
+     * top directory); those are skipped and the others are added to
+     * SEEN. Equal directories at different paths have equal hashes, so
+     * a subtree is only skipped where it was added at the same path,
+     * and then all its files under that path are in RESULT already.
+     * Files from trees visited earlier take precedence over later ones
+     * however much they share. */
+    void addFiles(String tree, String prefix, Map<String, String> result,
+                  Set<String> seen) {
+        for (Map.Entry<String, String> entry : entries(tree).entrySet()) {
+            String path = prefix + entry.getKey();
+            if (!path.endsWith(SEPARATOR)) {
+                result.putIfAbsent(path, entry.getValue());
+            } else if (seen == null || seen.add(path + entry.getValue())) {
+                addFiles(entry.getValue(), path, result, seen);
+            }
+        }
+    }
+
+    /** Returns the paths of the files whose blob hashes differ between
+     * trees FROM and TO, either of which may be null for an empty tree,
+     * mapped to their hashes in TO, or to null if TO lacks them. */
+    TreeMap<String, String> diff(String from, String to) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(from, to, result::put, (dir, hash) -> { });
+        return result;
+    }
+
+    /** Reports the differences between trees FROM and TO, either of
+     * which may be null for an empty tree: to FILES, each file whose blob
+     * hash differs, with its hash in TO or null if TO lacks it, and to
+     * DIRS, each directory whose tree differs, with its tree in TO or
+     * null, as for a Writer. Subtrees with equal hashes are skipped
+     * without being read. */
+    void diff(String from, String to, BiConsumer<String, String> files,
+              BiConsumer<String, String> dirs) {
+        diff("", from, to, files, dirs);
+    }
+
+    /** Reports the differences between trees FROM and TO of directory
+     * DIR, as diff(FROM, TO, FILES, DIRS) does. */
+    private void diff(String dir, String from, String to,
+                      BiConsumer<String, String> files,
+                      BiConsumer<String, String> dirs) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        dirs.accept(dir, to);
+        Map<String, String> before = from == null ? Map.of() : entries(from);
+        Map<String, String> after = to == null ? Map.of() : entries(to);
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            String name = entry.getKey();
+            String old = before.get(name);
+            if (name.endsWith(SEPARATOR)) {
+                diff(dir + name, old, entry.getValue(), files, dirs);
+            } else if (!entry.getValue().equals(old)) {
+                files.accept(dir + name, entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String name = entry.getKey();
+            if (!after.containsKey(name)) {
+                if (name.endsWith(SEPARATOR)) {
+                    diff(dir + name, entry.getValue(), null, files, dirs);
+                } else {
+                    files.accept(dir + name, null);
+                }
+            }
+        }
+    }
+
+    /** Returns the entries of the tree with hash TREE, which must not
+     * be modified. */
+    private TreeMap<String, String> entries(String tree) {
+        synchronized (cache) {
+            TreeMap<String, String> result = cache.get(tree);
+            if (result != null) {
+                return result;
+            }
+        }
+        TreeMap<String, String> result = decode(reader.apply(tree));
+        synchronized (cache) {
+            cache.put(tree, result);
+        }
+        return result;
+    }
+
+    /** Sets NAME in ENTRIES to HASH, or removes it if HASH is null. */
+    private static void put(Map<String, String> entries, String name, String hash) {
+        if (hash == null) {
+            entries.remove(name);
+        } else {
+            entries.put(name, hash);
+        }
+    }
+
+    /** Returns the text of the tree with ENTRIES. */
+    private static byte[] encode(Map<String, String> entries) {
+        StringBuilder text = new StringBuilder(entries.size() * 64);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            text.append(entry.getValue()).append(' ')
+                    .append(entry.getKey()).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the entries of the tree whose text is CONTENTS. */
+    private static TreeMap<String, String> decode(byte[] contents) {
+        TreeMap<String, String> result = new TreeMap<>();
+        String text = new String(contents, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int space = text.indexOf(' ', start);
+            int end = text.indexOf('\n', space);
+            result.put(text.substring(space + 1, end), text.substring(start, space));
+            start = end + 1;
+        }
+        return result;
+    }
+}
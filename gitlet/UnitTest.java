@@ -61,6 +61,931 @@ public class UnitTest {
         String testLine = Utils.readContentsAsString(hello);
     }
 
+    /** Tests that commits appended to the commit store can be
+     * read back by hash, and survive reopening the store. */
+    @Test
+    public void testCommitStore() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        Commit c = new Commit("stored", new java.util.Date(), null, null);
+        c.getBlobReferences().put("f.txt", "abc");
+        c.setCurrID();
+        store.put(c);
+        store.put(c);
+        assertEquals(1, store.size());
+
+        CommitStore reopened = new CommitStore(dir);
+        Commit read = reopened.get(c.getCurrID());
+        assertEquals("stored", read.getCommitMessage());
+        assertEquals("abc", read.getBlobReferences().get("f.txt"));
+        assertNull(reopened.get(Utils.sha1("missing")));
+    }
+
+    /** Tests resolving commits by prefix, including ambiguous and
+     * missing prefixes, and that abbreviations are unique. */
+    @Test
+    public void testCommitPrefix() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        for (int i = 0; i < 50; i += 1) {
+            Commit c = new Commit("commit " + i, new java.util.Date(), null, null);
+            c.setCurrID();
+            store.put(c);
+        }
+        assertEquals(50, store.resolve("").size());
+        for (String id : store.ids()) {
+            String abbrev = store.abbreviate(id, 1);
+            assertEquals(java.util.List.of(id), store.resolve(abbrev));
+            assertTrue(store.resolve(abbrev.substring(0, abbrev.length() - 1)).size() > 1
+                    || abbrev.length() == 1);
+            assertEquals(java.util.List.of(id), store.resolve(id.toUpperCase()));
+        }
+        assertTrue(store.resolve("xyz").isEmpty());
+    }
+
+    /** Tests on random sequences that Myers' algorithm finds common
+     * subsequences as long as the reference algorithm's, and that Myers'
+     * and the histogram algorithm find edits that turn one sequence into
+     * the other, with and without an edit limit. */
+    @Test
+    public void testDiffAlgorithms() {
+        java.util.Random random = new java.util.Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            java.util.List<String> a = randomLines(random), b = randomLines(random);
+            Diff reference = new Diff();
+            reference.setAlgorithm(Diff.Algorithm.LCS);
+            reference.setSequences(a, b);
+            Diff myers = new Diff();
+            myers.setSequences(a, b);
+            assertEquals(reference.lls(), myers.lls());
+            assertEquals(b, applyDiff(a, b, myers.diffs()));
+
+            Diff histogram = new Diff();
+            histogram.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+            histogram.setSequences(a, b);
+            assertEquals(b, applyDiff(a, b, histogram.diffs()));
+
+            Diff limited = new Diff();
+            limited.setEditLimit(2);
+            limited.setSequences(a, b);
+            assertEquals(b, applyDiff(a, b, limited.diffs()));
+        }
+    }
+
+    /** Returns a short random list of lines drawn from a small set. */
+    private static java.util.List<String> randomLines(java.util.Random random) {
+        java.util.List<String> result = new java.util.ArrayList<>();
+        for (int i = random.nextInt(30); i > 0; i -= 1) {
+            result.add("line " + random.nextInt(5));
+        }
+        return result;
+    }
+
+    /** Returns the result of applying EDITS, as returned by Diff.diffs(),
+     * that turn A into B, to A. */
+    private static java.util.List<String> applyDiff(java.util.List<String> a,
+                                                    java.util.List<String> b,
+                                                    int[] edits) {
+        java.util.List<String> result = new java.util.ArrayList<>();
+        int next = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            result.addAll(a.subList(next, edits[k]));
+            result.addAll(b.subList(edits[k + 2], edits[k + 2] + edits[k + 3]));
+            next = edits[k] + edits[k + 1];
+        }
+        result.addAll(a.subList(next, a.size()));
+        return result;
+    }
+
+    /** Tests that changes to different lines merge cleanly, and that
+     * only the lines both sides changed are marked as a conflict. */
+    @Test
+    public void testThreeWayMerge() {
+        byte[] base = "a\nb\nc\nd\ne\n".getBytes();
+        ThreeWayMerge clean = new ThreeWayMerge(base, "A\nb\nc\nd\ne\n".getBytes(),
+                "a\nb\nc\nd\nE\nf\n".getBytes(), Diff.Algorithm.MYERS);
+        assertEquals(0, clean.conflicts());
+        assertEquals("A\nb\nc\nd\nE\nf\n", new String(clean.contents()));
+
+        ThreeWayMerge conflict = new ThreeWayMerge(base, "a\nB\nc\nd\ne\n".getBytes(),
+                "a\nX\nc\nd\nE\n".getBytes(), Diff.Algorithm.HISTOGRAM);
+        assertEquals(1, conflict.conflicts());
+        assertEquals("a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\nc\nd\nE\n",
+                new String(conflict.contents()));
+    }
+
+    /** Tests merge bases on an asymmetric history containing a merge,
+     * both when the graph is built at once and one commit at a time. */
+    @Test
+    public void testMergeBase() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        CommitGraph graph = new CommitGraph(dir);
+        String root = storeCommit(store, "root", null, null);
+        String a1 = storeCommit(store, "a1", root, null);
+        String b1 = storeCommit(store, "b1", a1, null);
+        graph.update(store);
+        String a2 = storeCommit(store, "a2", a1, null);
+        String a3 = storeCommit(store, "a3", a2, null);
+        String a4 = storeCommit(store, "a4", a3, null);
+        String b2 = storeCommit(store, "b2", b1, a3);
+        String b3 = storeCommit(store, "b3", b2, null);
+        graph.update(store);
+
+        assertEquals(a1, graph.mergeBase(a2, b1));
+        assertEquals(a3, graph.mergeBase(a4, b3));
+        assertEquals(a3, graph.mergeBase(b3, a4));
+        assertEquals(a3, graph.mergeBase(a3, b3));
+        assertEquals(b3, graph.mergeBase(b3, b3));
+
+        CommitGraph rebuilt = new CommitGraph(Files.createTempDirectory("gitlet").toFile());
+        rebuilt.update(store);
+        assertEquals(a3, rebuilt.mergeBase(a4, b3));
+    }
+
+    /** Stores a commit with MESSAGE and parents PARENT1 and PARENT2 in
+     * STORE, returning its hash. */
+    private static String storeCommit(CommitStore store, String message,
+                                      String parent1, String parent2) {
+        Commit c = new Commit(message, new java.util.Date(), parent1, parent2);
+        c.setCurrID();
+        store.put(c);
+        return c.getCurrID();
+    }
+
+    /** Tests that an import stream becomes commits with the right
+     * parents and files, whose blobs are readable from the store. */
+    @Test
+    public void testFastImport() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        objects.init();
+        java.util.Map<String, Commit> branches = new java.util.TreeMap<>();
+        String stream = "commit master\nmark :1\ntime 100\ndata 5\nfirst\n"
+                + "M a.txt\ndata 2\na\nM b.txt\ndata 2\nb\n\n"
+                + "commit side\nmark :2\nfrom :1\ndata 4\nside\nD a.txt\n"
+                + "commit master\nmerge :2\ndata 5\nmerge\n"
+                + "M b.txt\ndata 3\nb2\n";
+        FastImport importer = new FastImport(objects, new CommitStore(dir),
+                branches, Diff.Algorithm.MYERS);
+        java.util.List<Commit> commits = importer.read(
+                new ByteArrayInputStream(stream.getBytes()));
+
+        assertEquals(3, commits.size());
+        assertEquals(3, importer.blobs());
+        Commit first = commits.get(0), side = commits.get(1), merge = commits.get(2);
+        assertEquals(100000, first.getTimeStamp().getTime());
+        assertEquals(java.util.Set.of("b.txt"), side.getBlobReferences().keySet());
+        assertEquals(first.getCurrID(), merge.getParentHash1());
+        assertEquals(side.getCurrID(), merge.getParentHash2());
+        assertEquals(merge, branches.get("master"));
+        assertEquals("b2\n", new String(objects.get(merge.getBlobReferences().get("b.txt"))));
+        assertEquals("a\n", new String(objects.get(merge.getBlobReferences().get("a.txt"))));
+    }
+
+    /** Tests that the blob set holds every committed blob across
+     * growth of its table and after being reopened. */
+    @Test
+    public void testBlobSet() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        Commit c = new Commit("many blobs", new java.util.Date(), null, null);
+        for (int i = 0; i < BlobSet.INITIAL_CAPACITY; i += 1) {
+            c.getBlobReferences().put("f" + i, Utils.sha1("blob" + i));
+        }
+        c.setCurrID();
+        store.put(c);
+        new BlobSet(dir).update(store);
+
+        BlobSet reopened = new BlobSet(dir);
+        reopened.update(store);
+        for (int i = 0; i < BlobSet.INITIAL_CAPACITY; i += 1) {
+            assertTrue(reopened.contains(Utils.sha1("blob" + i)));
+        }
+        assertFalse(reopened.contains(Utils.sha1("missing")));
+    }
+
+    /** Tests that compressed and raw objects read back as their original
+     * contents, that contents starting like a compressed object are
+     * still stored raw safely, and that objects without a header, with a
+     * bad length or truncated are rejected rather than read forever. */
+    @Test
+    public void testCompression() throws IOException {
+        byte[] raw = "abc\nabc\nabc\nabc\n".repeat(100)
+                .getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        byte[] packed = Compression.compress(raw);
+        assertTrue(Compression.isCompressed(packed));
+        assertTrue(packed.length < raw.length);
+        assertArrayEquals(raw, Compression.decompress(packed));
+        assertArrayEquals(raw, Compression.decompress(Compression.store(raw)));
+
+        byte[] lookalike = {0, 'G', 'Z', 1, 0, 0, 0, 0, 0, 0, 0, 9, 1, 2, 3, 4, 5};
+        assertFalse(Compression.isCompressed(Compression.store(lookalike)));
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.init();
+        File file = Utils.join(dir, "f.bin");
+        Utils.writeContents(file, (Object) lookalike);
+        store.putFile("ab" + "0".repeat(38), file);
+        file.delete();
+        store.copyTo("ab" + "0".repeat(38), file);
+        assertArrayEquals(lookalike, Utils.readContents(file));
+        assertArrayEquals(lookalike, store.get("ab" + "0".repeat(38)));
+
+        byte[] huge = java.util.Arrays.copyOf(packed, packed.length);
+        java.nio.ByteBuffer.wrap(huge).putLong(4, Long.MAX_VALUE / 2);
+        for (byte[] bad : new byte[][] {lookalike, huge}) {
+            try {
+                Compression.decompress(bad);
+                fail("bad object decompressed");
+            } catch (IllegalArgumentException excp) {
+                //expected
+            }
+        }
+
+        byte[] noise = new byte[5000];
+        new java.util.Random(61).nextBytes(noise);
+        byte[] compressed = Compression.compress(noise);
+        assertTrue(Compression.isCompressed(compressed));
+        byte[] truncated = java.util.Arrays.copyOf(compressed, compressed.length / 2);
+        try {
+            Compression.decompress(truncated);
+            fail("truncated object decompressed");
+        } catch (IllegalArgumentException excp) {
+            //expected
+        }
+    }
+
+    /** Tests that a commit survives encoding, including a blob hash that
+     * is not hex, that the encoding is smaller than Java serialization,
+     * and that Java-serialized state is still read. */
+    @Test
+    public void testCommitCodec() {
+        Commit c = new Commit("codec", new java.util.Date(123456789L),
+                Utils.sha1("p1"), null);
+        c.getBlobReferences().put("a.txt", Utils.sha1("a"));
+        c.getBlobReferences().put("b.txt", "abc");
+        c.setCurrID();
+        byte[] encoded = CommitCodec.encode(c);
+        assertTrue(encoded.length * 3 < Utils.serialize(c).length);
+        Commit d = CommitCodec.decode(encoded);
+        assertEquals(c.getCurrID(), d.getCurrID());
+        assertEquals(c.getParentHash1(), d.getParentHash1());
+        assertNull(d.getParentHash2());
+        assertEquals(c.getTimeStamp(), d.getTimeStamp());
+        assertEquals("codec", d.getCommitMessage());
+        assertEquals(c.getBlobReferences(), d.getBlobReferences());
+        java.util.TreeMap<String, String> staged = new java.util.TreeMap<>();
+        staged.put("a.txt", Utils.sha1("a"));
+        assertEquals(staged, CommitCodec.decodeState(CommitCodec.encodeState(staged)));
+        assertEquals(staged, CommitCodec.decodeState(Utils.serialize(staged)));
+    }
+
+    /** Tests that changing one file rewrites only the trees on its path,
+     * that trees list the files they were built from, and that diffs
+     * report only changed files without reading shared subtrees. */
+    @Test
+    public void testTreeStore() {
+        java.util.Map<String, byte[]> objects = new java.util.HashMap<>();
+        java.util.List<String> written = new ArrayList<>();
+        java.util.Set<String> read = new java.util.HashSet<>();
+        TreeStore trees = new TreeStore(hash -> {
+            read.add(hash);
+            return objects.get(hash);
+        }, (dir, hash, contents) -> {
+            written.add(dir);
+            objects.put(hash, contents);
+        });
+        java.util.TreeMap<String, String> files = new java.util.TreeMap<>();
+        files.put("top.txt", Utils.sha1("top"));
+        files.put("a/b/deep.txt", Utils.sha1("deep"));
+        files.put("c/other.txt", Utils.sha1("other"));
+        String first = trees.write(files);
+        assertEquals(4, written.size());
+
+        written.clear();
+        String second = trees.update(first,
+                java.util.Map.of("a/b/deep.txt", Utils.sha1("deeper")));
+        assertEquals(java.util.List.of("a/b/", "a/", ""), written);
+        files.put("a/b/deep.txt", Utils.sha1("deeper"));
+        assertEquals(files, new TreeStore(objects::get, null).files(second));
+
+        TreeStore fresh = new TreeStore(hash -> {
+            read.add(hash);
+            return objects.get(hash);
+        }, null);
+        read.clear();
+        assertEquals(java.util.Map.of("a/b/deep.txt", Utils.sha1("deeper")),
+                fresh.diff(first, second));
+        //both versions of the top directory, a/ and a/b/, but not c/
+        assertEquals(6, read.size());
+        java.util.Map<String, String> removed = new java.util.HashMap<>();
+        removed.put("c/other.txt", null);
+        assertEquals(removed, fresh.diff(second, trees.update(second, removed)));
+    }
+
+    /** Tests that the commit cache counts hits and misses, evicts the
+     * least recently used commit when full, and that duplicates of a
+     * commit do not share its files. */
+    @Test
+    public void testCommitCache() {
+        CommitCache cache = new CommitCache(2);
+        Commit a = new Commit("a", new java.util.Date(), null, null);
+        cache.put("a", a);
+        cache.put("b", new Commit("b", new java.util.Date(), null, null));
+        assertTrue(cache.get("a") == a);
+        cache.put("c", new Commit("c", new java.util.Date(), null, null));
+        assertNull(cache.get("b"));
+        assertTrue(cache.get("c") != null);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.evictions());
+        a.getBlobReferences().put("a.txt", Utils.sha1("a"));
+        Commit copy = a.duplicate();
+        copy.getBlobReferences().clear();
+        copy.setName("master");
+        assertEquals(1, a.getBlobReferences().size());
+        assertNull(a.getName());
+    }
+
+    /** Tests finding commits by whole message, by words and by word
+     * prefixes, across updates, and that an index whose postings do not
+     * match its table is rebuilt. */
+    @Test
+    public void testMessageIndex() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        String first = storeCommit(store, "Release 1.2", null, null);
+        String second = storeCommit(store, "fix release notes", first, null);
+        MessageIndex index = new MessageIndex(dir);
+        index.update(store);
+        String third = storeCommit(store, "Release 1.2", second, null);
+        index.update(store);
+        assertEquals(java.util.List.of(first, third), index.find("Release 1.2"));
+        assertTrue(index.find("release 1.2").isEmpty());
+        assertEquals(java.util.Set.of(first, second, third),
+                index.search("RELEASE", false));
+        assertEquals(java.util.Set.of(second), index.search("rel not", true));
+        assertTrue(index.search("rel", false).isEmpty());
+
+        Utils.writeContents(Utils.join(dir, "messagePostings"), new byte[0]);
+        MessageIndex reopened = new MessageIndex(dir);
+        reopened.update(store);
+        assertEquals(java.util.List.of(first, third), reopened.find("Release 1.2"));
+    }
+
+    /** Tests that a pipeline hands on results in the order of its items
+     * however many workers and however small its window. */
+    @Test
+    public void testPipeline() {
+        for (int workers : new int[] {1, 4}) {
+            java.util.List<Integer> results = new ArrayList<>();
+            try (Pipeline<Integer, Integer> pipeline = new Pipeline<>(workers, 3,
+                    i -> i * i, results::add)) {
+                for (int i = 0; i < 100; i += 1) {
+                    pipeline.add(i);
+                }
+                pipeline.finish();
+            }
+            assertEquals(100, results.size());
+            for (int i = 0; i < 100; i += 1) {
+                assertEquals(i * i, (int) results.get(i));
+            }
+        }
+    }
+
+    /** Tests that the commit graph records the times of commits for
+     * bounded logs, and the forms of time log accepts. */
+    @Test
+    public void testLogTimes() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        Commit root = new Commit("root", new java.util.Date(1000L), null, null);
+        root.setCurrID();
+        store.put(root);
+        Commit next = new Commit("next", new java.util.Date(5000L), root.getCurrID(), null);
+        next.setCurrID();
+        store.put(next);
+        CommitGraph graph = new CommitGraph(dir);
+        graph.update(store);
+        int pos = graph.position(next.getCurrID());
+        assertEquals(next.getCurrID(), graph.id(pos));
+        assertEquals(5000L, graph.time(pos));
+        assertEquals(1000L, graph.time(graph.parent1(pos)));
+        assertEquals(-1, graph.position(Utils.sha1("missing")));
+
+        assertEquals(java.time.Instant.ofEpochSecond(1600000000),
+                Main.parseTime("@1600000000"));
+        assertEquals(java.time.Instant.parse("2020-09-13T12:26:40Z"),
+                Main.parseTime("2020-09-13T12:26:40Z"));
+        long ago = java.time.Instant.now().toEpochMilli()
+                - Main.parseTime("2.days.ago").toEpochMilli();
+        assertTrue(Math.abs(ago - 2 * 86400000L) < 60000);
+        assertEquals(Main.parseTime("3 weeks ago").getEpochSecond() / 60,
+                Main.parseTime("21.days.ago").getEpochSecond() / 60);
+    }
+
+    /** Tests that the journal writes the files of a transaction, carries
+     * them into the next, restores files a crash left stale and discards
+     * an incomplete transaction. */
+    @Test
+    public void testJournal() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File head = Utils.join(dir, "headPointer");
+        File branches = Utils.join(dir, "allBranches");
+        Journal journal = new Journal(dir);
+        journal.commit(java.util.Map.of(head, "h1".getBytes(), branches, "b1".getBytes()));
+        journal.commit(java.util.Map.of(head, "h2".getBytes()));
+        assertEquals("h2", Utils.readContentsAsString(head));
+        assertEquals(0, journal.recover());
+
+        Utils.writeContents(head, "h1");
+        branches.delete();
+        Utils.writeContents(Utils.join(dir, "journal.tmp"), "incomplete");
+        assertEquals(2, new Journal(dir).recover());
+        assertEquals("h2", Utils.readContentsAsString(head));
+        assertEquals("b1", Utils.readContentsAsString(branches));
+        assertFalse(Utils.join(dir, "journal.tmp").exists());
+    }
+
+    /** Tests that two identical sibling directories, which share a tree,
+     * both have their files listed when subtrees already seen are
+     * skipped. */
+    @Test
+    public void testTreeStoreIdenticalDirs() {
+        java.util.Map<String, byte[]> objects = new java.util.HashMap<>();
+        TreeStore trees = new TreeStore(objects::get,
+                (dir, hash, contents) -> objects.put(hash, contents));
+        java.util.TreeMap<String, String> files = new java.util.TreeMap<>();
+        files.put("a/README", Utils.sha1("same", "README"));
+        files.put("b/README", Utils.sha1("same", "README"));
+        String first = trees.write(files);
+        java.util.Set<String> seen = new java.util.HashSet<>();
+        java.util.Map<String, String> result = new java.util.TreeMap<>();
+        trees.addFiles(first, "", result, seen);
+        assertEquals(files, result);
+
+        files.put("c/README", Utils.sha1("same", "README"));
+        String second = trees.update(first,
+                java.util.Map.of("c/README", Utils.sha1("same", "README")));
+        trees.addFiles(second, "", result, seen);
+        assertEquals(files, result);
+    }
+
+    /** Tests that a store whose rewrite was cut short by a crash, before
+     * or between the renames of the new log and index, still reads every
+     * commit when reopened. */
+    @Test
+    public void testInterruptedRewrite() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        CommitStore store = new CommitStore(dir);
+        java.util.List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i += 1) {
+            ids.add(storeCommit(store, "rewrite " + i, null, null));
+        }
+        File log = Utils.join(dir, "commitLog"), index = Utils.join(dir, "commitIndex");
+        byte[] oldLog = Utils.readContents(log), oldIndex = Utils.readContents(index);
+        store.compressAll();
+        byte[] newLog = Utils.readContents(log), newIndex = Utils.readContents(index);
+
+        Utils.writeContents(log, (Object) oldLog);
+        Utils.writeContents(index, (Object) oldIndex);
+        Utils.writeContents(Utils.join(dir, "commitLog.new"),
+                (Object) java.util.Arrays.copyOf(newLog, newLog.length / 2));
+        assertStoreHolds(dir, ids);
+        assertFalse(Utils.join(dir, "commitLog.new").exists());
+
+        Utils.writeContents(log, (Object) newLog);
+        Utils.writeContents(Utils.join(dir, "commitIndex.new"), (Object) newIndex);
+        assertStoreHolds(dir, ids);
+        assertFalse(Utils.join(dir, "commitIndex.new").exists());
+    }
+
+    /** Tests that a partial entry left at the end of the index by an
+     * interrupted append is dropped when the store is opened, so that
+     * entries appended after it are read back. */
+    @Test
+    public void testTornIndexEntry() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        java.util.List<Commit> commits = new java.util.ArrayList<>();
+        java.util.List<String> ids = new java.util.ArrayList<>();
+        for (int i = 0; i < 3; i += 1) {
+            Commit c = new Commit("commit " + i, new java.util.Date(), null, null);
+            c.setCurrID();
+            commits.add(c);
+            ids.add(c.getCurrID());
+        }
+        CommitStore store = new CommitStore(dir);
+        store.put(commits.get(0));
+        store.put(commits.get(1));
+        File index = Utils.join(dir, "commitIndex");
+        long entrySize = index.length() / 2;
+        byte[] contents = Utils.readContents(index);
+        Utils.writeContents(index, contents, java.util.Arrays.copyOf(contents, 5));
+
+        new CommitStore(dir).put(commits.get(2));
+        assertEquals(3 * entrySize, index.length());
+        assertStoreHolds(dir, ids);
+    }
+
+    /** Tests that migrating a log of version 1, whose records are
+     * Java-serialized, survives being interrupted before or between the
+     * renames of the new files, and that the migrated log is of the
+     * current version. */
+    @Test
+    public void testInterruptedMigration() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        java.util.List<String> ids = writeVersion1Log(dir);
+        File log = Utils.join(dir, "commitLog"), index = Utils.join(dir, "commitIndex");
+        byte[] oldLog = Utils.readContents(log), oldIndex = Utils.readContents(index);
+
+        Utils.writeContents(Utils.join(dir, "commitLog.new"), "partial");
+        assertStoreHolds(dir, ids);
+        assertFalse(Utils.join(dir, "commitLog.new").exists());
+        byte[] newLog = Utils.readContents(log), newIndex = Utils.readContents(index);
+        assertEquals(CommitStore.VERSION, java.nio.ByteBuffer.wrap(newLog).getInt(4));
+
+        Utils.writeContents(log, (Object) newLog);
+        Utils.writeContents(index, (Object) oldIndex);
+        Utils.writeContents(Utils.join(dir, "commitIndex.new"), (Object) newIndex);
+        assertStoreHolds(dir, ids);
+        assertArrayEquals(newIndex, Utils.readContents(index));
+
+        Utils.writeContents(log, (Object) oldLog);
+        Utils.writeContents(index, (Object) oldIndex);
+        assertStoreHolds(dir, ids);
+    }
+
+    /** Writes to DIR a commit log of version 1 holding three
+     * Java-serialized commits, and its index, returning their hashes. */
+    private static java.util.List<String> writeVersion1Log(File dir) throws IOException {
+        java.util.List<String> ids = new ArrayList<>();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream logOut = new DataOutputStream(log);
+        DataOutputStream indexOut = new DataOutputStream(index);
+        logOut.write(new byte[] {'G', 'L', 'O', 'G'});
+        logOut.writeInt(1);
+        for (int i = 0; i < 3; i += 1) {
+            Commit c = new Commit("legacy " + i, new java.util.Date(1000L * i), null, null);
+            c.getBlobReferences().put("f.txt", Utils.sha1("f" + i));
+            c.setCurrID();
+            byte[] record = Utils.serialize(c);
+            indexOut.write(Utils.fromHex(c.getCurrID()));
+            indexOut.writeLong(log.size());
+            logOut.writeInt(record.length);
+            logOut.write(record);
+            ids.add(c.getCurrID());
+        }
+        Utils.writeContents(Utils.join(dir, "commitLog"), (Object) log.toByteArray());
+        Utils.writeContents(Utils.join(dir, "commitIndex"), (Object) index.toByteArray());
+        return ids;
+    }
+
+    /** Asserts that the commit store in DIR, freshly opened, holds
+     * exactly the commits with hashes IDS. */
+    private static void assertStoreHolds(File dir, java.util.List<String> ids) {
+        CommitStore store = new CommitStore(dir);
+        assertEquals(ids.size(), store.size());
+        for (String id : ids) {
+            assertEquals(id, store.get(id).getCurrID());
+        }
+    }
+
+    /** Tests that the stat cache keeps files with the same name in
+     * different directories apart, does not record files modified within
+     * the racy window, and hashes a file again once its size or
+     * modification time changes. */
+    @Test
+    public void testStatCache() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File gitletDir = Utils.join(dir, ".gitlet");
+        gitletDir.mkdir();
+        File first = Utils.join(dir, "sub", "a.txt"), second = Utils.join(dir, "a.txt");
+        first.getParentFile().mkdir();
+        long old = System.currentTimeMillis() - 10000;
+        Utils.writeContents(first, "first");
+        Utils.writeContents(second, "second");
+        first.setLastModified(old);
+        second.setLastModified(old);
+        StatCache cache = new StatCache(gitletDir);
+        assertEquals(Blob.hash(first), cache.hash(first));
+        assertEquals(Blob.hash(second), cache.hash(second));
+        assertEquals(2, cache.size());
+
+        File racy = Utils.join(dir, "racy.txt");
+        Utils.writeContents(racy, "racy");
+        assertEquals(Blob.hash(racy), cache.hash(racy));
+        assertEquals(2, cache.size());
+
+        Utils.writeContents(first, "first, longer");
+        first.setLastModified(old);
+        assertEquals(Blob.hash(first), cache.hash(first));
+        Utils.writeContents(second, "SECOND");
+        second.setLastModified(old - 10000);
+        assertEquals(Blob.hash(second), cache.hash(second));
+        cache.save();
+
+        StatCache reloaded = new StatCache(gitletDir);
+        assertEquals(2, reloaded.size());
+        assertEquals(Blob.hash(first), reloaded.hash(first));
+        assertEquals(Blob.hash(second), reloaded.hash(second));
+    }
+
+    /** Tests that objects packed by the object store, successive
+     * versions of a file stored as deltas against the newer version as
+     * their base, read back unchanged through the pack's mapped index,
+     * and through an index rebuilt from the pack, and that packing again
+     * merges a new loose object into the pack. */
+    @Test
+    public void testPackRoundTrip() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.init();
+        java.util.Map<String, byte[]> objects = new java.util.LinkedHashMap<>();
+        java.util.List<String> history = new java.util.ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            text.append("line ").append(i).append("\n");
+        }
+        for (int v = 0; v < 5; v += 1) {
+            text.replace(0, text.indexOf("\n"), "version " + v);
+            byte[] contents = text.toString().getBytes();
+            history.add(Utils.sha1(contents));
+            objects.put(Utils.sha1(contents), contents);
+        }
+        byte[] binary = new byte[3000];
+        new java.util.Random(8).nextBytes(binary);
+        objects.put(Utils.sha1(binary), binary);
+        for (java.util.Map.Entry<String, byte[]> object : objects.entrySet()) {
+            store.put(object.getKey(), object.getValue());
+        }
+
+        ObjectStore.PackSummary summary = store.pack(java.util.List.of(history),
+                Diff.Algorithm.MYERS);
+        assertEquals(6, summary.objects);
+        assertEquals(4, summary.deltas);
+        assertTrue(summary.bytesAfter < summary.bytesBefore);
+        File packFile = Utils.join(dir, "objects", "pack", "objects.pack");
+        PackFile pack = new PackFile(packFile);
+        assertEquals(objects.keySet(), new java.util.HashSet<>(pack.hashes()));
+        for (java.util.Map.Entry<String, byte[]> object : objects.entrySet()) {
+            assertArrayEquals(object.getValue(), pack.get(object.getKey()));
+        }
+
+        PackFile.indexFor(packFile).delete();
+        pack = new PackFile(packFile);
+        assertTrue(PackFile.indexFor(packFile).isFile());
+        for (String hash : history) {
+            assertArrayEquals(objects.get(hash), pack.get(hash));
+        }
+
+        byte[] loose = "loose".getBytes();
+        store.put(Utils.sha1(loose), loose);
+        objects.put(Utils.sha1(loose), loose);
+        store.pack(java.util.List.of(history), Diff.Algorithm.MYERS);
+        ObjectStore reopened = new ObjectStore(dir);
+        for (java.util.Map.Entry<String, byte[]> object : objects.entrySet()) {
+            assertArrayEquals(object.getValue(), reopened.get(object.getKey()));
+        }
+        assertEquals(objects.size(), new PackFile(packFile).hashes().size());
+    }
+
+    /** Tests that checking out a commit on several threads leaves the
+     * working directory holding exactly its files, writing only those
+     * that differ, and that a scan on several threads reports modified,
+     * deleted and untracked files as a scan on one thread does. */
+    @Test
+    public void testWorkingTree() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File gitletDir = Utils.join(dir, ".gitlet");
+        gitletDir.mkdir();
+        ObjectStore store = new ObjectStore(gitletDir);
+        store.init();
+        java.util.Map<String, String> hashes = new java.util.HashMap<>();
+        for (String version : new String[] {"a1", "a2", "b1", "c1", "d1", "e1"}) {
+            hashes.put(version, Utils.sha1(version, version.substring(0, 1)));
+            store.put(hashes.get(version), version.getBytes());
+        }
+        java.util.Map<String, String> from = java.util.Map.of("a", hashes.get("a1"),
+                "b", hashes.get("b1"), "c", hashes.get("c1"));
+        java.util.Map<String, String> to = java.util.Map.of("a", hashes.get("a2"),
+                "b", hashes.get("b1"), "d", hashes.get("d1"));
+        for (String name : from.keySet()) {
+            Utils.writeContents(Utils.join(dir, name), name + "1");
+        }
+
+        StatCache cache = new StatCache(gitletDir);
+        WorkingTree tree = new WorkingTree(dir, cache, 4);
+        assertEquals(3, tree.checkout(from, to, store));
+        assertFalse(Utils.join(dir, "c").exists());
+        for (java.util.Map.Entry<String, String> file : to.entrySet()) {
+            assertEquals(file.getValue(), Blob.hash(Utils.join(dir, file.getKey())));
+        }
+        assertEquals(0, tree.checkout(to, to, store));
+
+        Utils.writeContents(Utils.join(dir, "b"), "b2");
+        Utils.join(dir, "d").delete();
+        Utils.writeContents(Utils.join(dir, "e"), "e2");
+        Utils.writeContents(Utils.join(dir, "f"), "f1");
+        java.util.Map<String, String> staged = java.util.Map.of("e", hashes.get("e1"),
+                "g", hashes.get("e1"));
+        java.util.Set<String> removed = java.util.Set.of("a");
+        WorkingTree.Status serial = new WorkingTree(dir, cache, 1).scan(to, staged, removed);
+        WorkingTree.Status parallel = tree.scan(to, staged, removed);
+        assertEquals(java.util.Map.of("b", WorkingTree.MODIFIED, "d", WorkingTree.DELETED,
+                "e", WorkingTree.MODIFIED, "g", WorkingTree.DELETED), serial.unstaged);
+        assertEquals(java.util.Set.of("a", "f"), serial.untracked);
+        assertEquals(serial.unstaged, parallel.unstaged);
+        assertEquals(serial.untracked, parallel.untracked);
+    }
+
+    /** Tests that a script run as a batch skips blank lines and
+     * comments, groups quoted words into one argument, and reports the
+     * status of each command. */
+    @Test
+    public void testBatch() throws IOException {
+        assertEquals(java.util.List.of("commit", "Add \"a\" and b", "x y"),
+                java.util.Arrays.asList(Batch.split("commit \"Add \\\"a\\\" and b\" 'x y'")));
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        Utils.writeContents(Utils.join(dir, "b.txt"), "b");
+        String script = "# set up\ninit\n\nadd a.txt\nadd b.txt\ncheckpoint\n"
+                + "commit \"Add a and b\"\nrm c.txt\nlog\n";
+        String cwd = System.getProperty("user.dir");
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        System.setProperty("user.dir", dir.getPath());
+        System.setOut(new PrintStream(out));
+        try {
+            Batch batch = new Batch(Batch.local(new Repo()), new PrintStream(report));
+            assertEquals(0, batch.run(new BufferedReader(new StringReader(script))));
+        } finally {
+            System.setOut(stdout);
+            System.setProperty("user.dir", cwd);
+        }
+        assertTrue(out.toString().contains("No reason to remove the file.\n"));
+        assertTrue(out.toString().contains("Add a and b\n"));
+        String[] lines = report.toString().split("\n");
+        assertEquals(8, lines.length);
+        assertTrue(lines[5].startsWith("[6] exit 0 "));
+        assertTrue(lines[5].endsWith(": rm c.txt"));
+        assertTrue(lines[7].startsWith("7 commands, 0 failed"));
+    }
+
+    /** Tests that a command failing part way through a batch leaves the
+     * state files as they were before it, while the changes made by the
+     * commands before it are still written at the end. */
+    @Test
+    public void testBatchRollback() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        runBatch(dir, "init\nadd a.txt\n");
+        File gitletDir = Utils.join(dir, ".gitlet");
+        byte[] head = Utils.readContents(Utils.join(gitletDir, "headPointer"));
+        byte[] staged = Utils.readContents(Utils.join(gitletDir, "newBlobReferences"));
+        byte[] branches = Utils.readContents(Utils.join(gitletDir, "allBranches"));
+
+        File index = Utils.join(gitletDir, "commitIndex");
+        byte[] indexContents = Utils.readContents(index);
+        index.delete();
+        index.mkdir();
+        assertEquals(1, runBatch(dir, "branch other\ncommit \"Add a\"\n"));
+        index.delete();
+        Utils.writeContents(index, indexContents);
+
+        assertArrayEquals(head, Utils.readContents(Utils.join(gitletDir, "headPointer")));
+        assertArrayEquals(staged,
+                Utils.readContents(Utils.join(gitletDir, "newBlobReferences")));
+        assertFalse(java.util.Arrays.equals(branches,
+                Utils.readContents(Utils.join(gitletDir, "allBranches"))));
+        assertEquals(0, runBatch(dir, "commit \"Add a\"\n"));
+    }
+
+    /** Tests that commands sent to a daemon run on its repository and
+     * send back their output, and that the daemon stops when asked. */
+    @Test
+    public void testDaemon() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a");
+        runBatch(dir, "init\nadd a.txt\ncommit \"Add a\"\n");
+        File gitletDir = Utils.join(dir, ".gitlet");
+        String cwd = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        Thread server = new Thread(() -> {
+            try {
+                new Daemon(gitletDir).serve();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+        try {
+            server.start();
+            for (int i = 0; i < 500 && !Daemon.running(gitletDir); i += 1) {
+                Thread.sleep(10);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(Daemon.forward(new String[] {"branch", "other"}, gitletDir, out));
+            assertTrue(Daemon.forward(new String[] {"status"}, gitletDir, out));
+            assertTrue(out.toString().contains("*master\nother\n"));
+            assertTrue(Daemon.forward(new String[] {"daemon", "stop"}, gitletDir, out));
+            server.join();
+        } finally {
+            System.setProperty("user.dir", cwd);
+        }
+        assertFalse(Daemon.running(gitletDir));
+        assertFalse(Daemon.forward(new String[] {"status"}, gitletDir, System.out));
+    }
+
+    /** Tests that status finds files in subdirectories under the paths
+     * commits record, so that an unchanged nested file is not reported,
+     * and changed, deleted and untracked ones are. */
+    @Test
+    public void testStatusNested() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Utils.join(dir, "a").mkdir();
+        Utils.writeContents(Utils.join(dir, "a", "b.txt"), "b");
+        Utils.writeContents(Utils.join(dir, "top.txt"), "top");
+        runBatch(dir, "init\nadd a/b.txt\nadd top.txt\ncommit \"Add files\"\n");
+        assertTrue(status(dir).contains("=== Modifications Not Staged For Commit ===\n\n"
+                + "=== Untracked Files ===\n\n"));
+
+        Utils.writeContents(Utils.join(dir, "a", "b.txt"), "changed");
+        Utils.writeContents(Utils.join(dir, "a", "c.txt"), "c");
+        Utils.join(dir, "top.txt").delete();
+        assertTrue(status(dir).contains("=== Modifications Not Staged For Commit ===\n"
+                + "a/b.txt (modified)\ntop.txt (deleted)\n\n"
+                + "=== Untracked Files ===\na/c.txt\n\n"));
+    }
+
+    /** Tests that a file removed and then added back is still in the
+     * next commit, and that the files the commit and HEAD hold are
+     * those of the commit's tree. */
+    @Test
+    public void testCommitAfterRemoveAndAdd() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Utils.writeContents(Utils.join(dir, "f.txt"), "f");
+        Utils.writeContents(Utils.join(dir, "g.txt"), "g");
+        runBatch(dir, "init\nadd f.txt\nadd g.txt\ncommit \"Add f and g\"\n"
+                + "rm f.txt\n");
+        Utils.writeContents(Utils.join(dir, "f.txt"), "f");
+        Utils.writeContents(Utils.join(dir, "h.txt"), "h");
+        assertEquals(0, runBatch(dir, "add f.txt\nadd h.txt\ncommit \"Add h\"\n"));
+
+        File gitletDir = Utils.join(dir, ".gitlet");
+        Commit head = (Commit) CommitCodec.decodeState(
+                Utils.readContents(Utils.join(gitletDir, "headPointer")));
+        CommitStore store = new CommitStore(gitletDir);
+        Commit stored = store.get(head.getCurrID());
+        java.util.TreeMap<String, String> files = store.trees().files(stored.getTree());
+        assertEquals(new java.util.TreeMap<>(java.util.Map.of("f.txt", Utils.sha1("f", "f.txt"),
+                "g.txt", Utils.sha1("g", "g.txt"),
+                "h.txt", Utils.sha1("h", "h.txt"))), files);
+        assertEquals(files, head.getBlobReferences());
+        assertEquals(files, stored.getBlobReferences());
+    }
+
+    /** Returns the output of status on the repository in the working
+     * directory DIR. */
+    private static String status(File dir) throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            runBatch(dir, "status\n");
+        } finally {
+            System.setOut(stdout);
+        }
+        return out.toString();
+    }
+
+    /** Runs the commands of SCRIPT as a batch on the repository in the
+     * working directory DIR. Returns the number that failed. */
+    private static int runBatch(File dir, String script) throws IOException {
+        String cwd = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        try {
+            Batch batch = new Batch(Batch.local(new Repo()),
+                    new PrintStream(new ByteArrayOutputStream()));
+            return batch.run(new BufferedReader(new StringReader(script)));
+        } finally {
+            System.setProperty("user.dir", cwd);
+        }
+    }
+
+    /** Tests that applying a delta to its base rebuilds the target,
+     * including a final line without a newline. */
+    @Test
+    public void testDelta() {
+        String base = "a\nb\nc\nd\ne";
+        String target = "a\nB\nc\nd\nx\ne\nf";
+        byte[] delta = Delta.create(Delta.lines(base), Delta.lines(target));
+        byte[] rebuilt = Delta.apply(base.getBytes(), delta);
+        assertEquals(target, new String(rebuilt));
+    }
+
     @Test
     public void testRM() {
         Repo r = new Repo();
@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/** The files of the working directory, compared with those tracked
+ * by commits and the staging area.
+ * Only files that are tracked or staged are hashed, and the hashes come
+ * from a StatCache, so unchanged files cost a stat each and only files
+ * that changed are read. Checking out a commit likewise writes only
+ * the files whose contents differ. Stat, hash and write work is spread
+ * across a pool of worker threads.
+ * @author Eesha Thaker
+ */
+class WorkingTree {
+
+    /** Marks a file whose contents differ from those tracked or staged. */
+    static final String MODIFIED = "modified";
+
+    /** Marks a tracked or staged file missing from the directory. */
+    static final String DELETED = "deleted";
+
+    /** The working directory. */
+    private final File dir;
+
+    /** Cache of the blob hashes of files in dir. */
+    private final StatCache statCache;
+
+    /** Number of threads used to stat, hash and write files. */
+    private final int workers;
+
+    /** The working directory DIR, whose files are hashed through
+     * STATCACHE with up to WORKERS threads. */
+    WorkingTree(File dir, StatCache statCache, int workers) {
+        this.dir = dir;
+        this.statCache = statCache;
+        this.workers = Math.max(1, workers);
+    }
+
+    /** The result of a scan. */
+    static class Status {
+        /** Paths of files with changes that are not staged, mapped to
+         * MODIFIED or DELETED, in sorted order. */
+        final TreeMap<String, String> unstaged = new TreeMap<>();
+        /** Paths of files that are neither tracked nor staged, in
+         * sorted order. */
+        final TreeSet<String> untracked = new TreeSet<>();
+    }
+
+    /** Returns the changes in the working directory relative to TRACKED,
+     * the file paths and blob hashes of the current commit, STAGED, those
+     * of the files staged for addition, and REMOVED, the paths of the
+     * files staged for removal. Paths are relative to the working
+     * directory, with / as separator, as commits record them; files in
+     * subdirectories are scanned too. */
+    Status scan(Map<String, String> tracked, Map<String, String> staged,
+                Set<String> removed) {
+        Status result = new Status();
+        TreeSet<String> present = new TreeSet<>();
+        List<File> toHash = new ArrayList<>();
+        for (File file : files()) {
+            String path = path(file);
+            present.add(path);
+            if (staged.containsKey(path)
+                    || (tracked.containsKey(path) && !removed.contains(path))) {
+                toHash.add(file);
+            } else {
+                result.untracked.add(path);
+            }
+        }
+
+        Map<String, String> hashes = hashes(toHash);
+        for (Map.Entry<String, String> e : hashes.entrySet()) {
+            String expected = staged.containsKey(e.getKey())
+                    ? staged.get(e.getKey()) : tracked.get(e.getKey());
+            if (!expected.equals(e.getValue())) {
+                result.unstaged.put(e.getKey(), MODIFIED);
+            }
+        }
+        for (String path : staged.keySet()) {
+            if (!present.contains(path)) {
+                result.unstaged.put(path, DELETED);
+            }
+        }
+        for (String path : tracked.keySet()) {
+            if (!present.contains(path) && !removed.contains(path)) {
+                result.unstaged.put(path, DELETED);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the paths of FILES, relative to the working directory,
+     * mapped to their blob hashes, computed by up to workers threads at
+     * once. */
+    Map<String, String> hashes(List<File> files) {
+        Map<String, String> result = new ConcurrentHashMap<>();
+        forEach(files, file -> result.put(path(file), statCache.hash(file)));
+        return result;
+    }
+
+    /** Returns the files in the working directory and its
+     * subdirectories, other than the gitlet directory. */
+    private List<File> files() {
+        List<File> result = new ArrayList<>();
+        ArrayDeque<File> dirs = new ArrayDeque<>(List.of(dir));
+        while (!dirs.isEmpty()) {
+            File[] files = dirs.pop().listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                if (file.isFile()) {
+                    result.add(file);
+                } else if (file.isDirectory() && !file.getName().equals(".gitlet")) {
+                    dirs.push(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the path of FILE, in the working directory, relative to
+     * it, with / as separator. */
+    private String path(File file) {
+        Path relative = dir.toPath().relativize(file.toPath());
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Changes the working directory from the files of one commit,
+     * FROM, to those of another, TO, both mapping file names to blob
+     * hashes. Files of FROM that are not in TO are deleted. A file of TO
+     * is written from STORE only if the working copy is missing or its
+     * hash differs, which the stat cache tells without reading unchanged
+     * files. Returns the number of files written or deleted. */
+    int checkout(Map<String, String> from, Map<String, String> to,
+                 ObjectStore store) {
+        AtomicInteger touched = new AtomicInteger();
+        for (String name : from.keySet()) {
+            if (!to.containsKey(name) && Utils.restrictedDelete(new File(dir, name))) {
+                touched.incrementAndGet();
+            }
+        }
+        forEach(new ArrayList<>(to.entrySet()), e -> {
+            File file = new File(dir, e.getKey());
+            if (!file.isFile() || !statCache.hash(file).equals(e.getValue())) {
+                store.copyTo(e.getValue(), file);
+                touched.incrementAndGet();
+            }
+        });
+        return touched.get();
+    }
+
+    /** Applies TASK to each of ITEMS, using up to workers threads. */
+    private <T> void forEach(List<T> items, Consumer<T> task) {
+        int threads = Math.min(workers, items.size());
+        if (threads <= 1) {
+            items.forEach(task);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (T item : items) {
+                futures.add(pool.submit(() -> task.accept(item)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}